@@ -0,0 +1,278 @@
+package com.kmarzecki.communicator.api;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+import static com.kmarzecki.communicator.util.MessageUtils.DROPPABLE_HEADER;
+
+/**
+ * Session decorator queueing outbound frames and writing them on a flush executor,
+ * so a slow client never blocks the thread sending to it
+ * When the queued frames exceed the buffer limit the overflow policy decides which frames are dropped,
+ * a session still over the limit or blocked in a single write for longer than the time limit is closed.
+ * The write time is checked when a frame is queued and by the watchdog of the factory.
+ */
+@Slf4j
+class BufferedWebSocketSession extends WebSocketSessionDecorator {
+    private static final int MAX_FRAMES_PER_FLUSH = 32;
+    private static final int MAX_HEADER_BYTES = 1024;
+    private static final String DROPPABLE_LINE = "\n" + DROPPABLE_HEADER + ":true";
+    private static final String DESTINATION_LINE = "\ndestination:";
+
+    private final OutboundBufferingDecoratorFactory factory;
+    private final Executor flushExecutor;
+    private final OverflowPolicy policy;
+    private final long bufferSizeLimit;
+    private final long sendTimeLimit;
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private long bufferSize;
+    private long sendStartedAt;
+    private boolean flushing;
+    private boolean closed;
+    private CloseStatus pendingClose;
+
+    BufferedWebSocketSession(WebSocketSession delegate,
+                             OutboundBufferingDecoratorFactory factory,
+                             Executor flushExecutor,
+                             OverflowPolicy policy,
+                             long bufferSizeLimit,
+                             long sendTimeLimit) {
+        super(delegate);
+        this.factory = factory;
+        this.flushExecutor = flushExecutor;
+        this.policy = policy;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimit = sendTimeLimit;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        String cutOffReason;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            cutOffReason = enqueue(new Frame(message));
+            if (cutOffReason == null && !flushing) {
+                flushing = true;
+                flushExecutor.execute(this::flush);
+            }
+        }
+        if (cutOffReason != null) {
+            cutOff(cutOffReason);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    /**
+     * Close the session once the frames queued so far are written, so an ERROR frame reaches the client
+     */
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        synchronized (this) {
+            if (flushing) {
+                pendingClose = status;
+                return;
+            }
+        }
+        getDelegate().close(status);
+    }
+
+    /**
+     * Drop buffered frames once the session is closed
+     */
+    void release() {
+        markClosed();
+    }
+
+    /**
+     * Close the session if the write in progress has taken longer than the send time limit
+     * @param now current time in milliseconds
+     */
+    void checkSendTime(long now) {
+        boolean exceeded;
+        synchronized (this) {
+            exceeded = !closed && sendTimeExceeded(now);
+        }
+        if (exceeded) {
+            cutOff("send time limit exceeded");
+        }
+    }
+
+    /**
+     * @return whether the session was open until now
+     */
+    private synchronized boolean markClosed() {
+        boolean wasOpen = !closed;
+        closed = true;
+        frames.clear();
+        updateBufferSize(-bufferSize);
+        return wasOpen;
+    }
+
+    private boolean sendTimeExceeded(long now) {
+        return sendStartedAt > 0 && now - sendStartedAt > sendTimeLimit;
+    }
+
+    /**
+     * @return reason for closing the session, null if the frame was queued
+     */
+    private String enqueue(Frame frame) {
+        if (sendTimeExceeded(System.currentTimeMillis())) {
+            return "send time limit exceeded";
+        }
+        if (policy == OverflowPolicy.COALESCE && frame.droppable) {
+            removeDroppable(f -> Objects.equals(f.destination, frame.destination), "coalesced");
+        }
+        frames.add(frame);
+        updateBufferSize(frame.size);
+        factory.recordBuffered(bufferSize);
+        if (bufferSize <= bufferSizeLimit) {
+            return null;
+        }
+        if (policy != OverflowPolicy.DISCONNECT) {
+            removeDroppable(f -> bufferSize > bufferSizeLimit, "dropped");
+        }
+        return bufferSize > bufferSizeLimit ? "buffer size limit exceeded" : null;
+    }
+
+    private void removeDroppable(Predicate<Frame> condition, String reason) {
+        for (Iterator<Frame> iterator = frames.iterator(); iterator.hasNext(); ) {
+            Frame frame = iterator.next();
+            if (frame.droppable && condition.test(frame)) {
+                iterator.remove();
+                updateBufferSize(-frame.size);
+                factory.recordDropped(reason);
+            }
+        }
+    }
+
+    private void flush() {
+        for (int i = 0; i < MAX_FRAMES_PER_FLUSH; i++) {
+            Frame frame;
+            CloseStatus closeStatus = null;
+            synchronized (this) {
+                frame = closed ? null : frames.poll();
+                if (frame == null) {
+                    flushing = false;
+                    closeStatus = pendingClose;
+                    pendingClose = null;
+                } else {
+                    updateBufferSize(-frame.size);
+                    sendStartedAt = System.currentTimeMillis();
+                }
+            }
+            if (frame == null) {
+                if (closeStatus != null) {
+                    closeDelegate(closeStatus);
+                }
+                return;
+            }
+            try {
+                getDelegate().sendMessage(frame.message);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Failed to send a frame to session {}", getId(), e);
+                release();
+            } finally {
+                synchronized (this) {
+                    sendStartedAt = 0;
+                }
+            }
+        }
+        // yield the thread to other sessions, continuing with a new task
+        flushExecutor.execute(this::flush);
+    }
+
+    private void cutOff(String reason) {
+        long buffered;
+        synchronized (this) {
+            buffered = bufferSize;
+            if (!markClosed()) {
+                return;
+            }
+        }
+        Principal user = getPrincipal();
+        log.warn("Closing session {} of user {}: {}, {} bytes buffered",
+                getId(), user != null ? user.getName() : null, reason, buffered);
+        factory.recordCutOff(reason);
+        closeDelegate(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private void closeDelegate(CloseStatus status) {
+        try {
+            getDelegate().close(status);
+        } catch (IOException e) {
+            log.debug("Failed to close session {}", getId(), e);
+        }
+    }
+
+    private void updateBufferSize(long delta) {
+        bufferSize += delta;
+        factory.updateTotalBuffered(delta);
+    }
+
+    /**
+     * Outbound frame with the STOMP headers relevant to the overflow policy
+     */
+    private static class Frame {
+        private final WebSocketMessage<?> message;
+        private final int size;
+        private final boolean droppable;
+        private final String destination;
+
+        private Frame(WebSocketMessage<?> message) {
+            this.message = message;
+            this.size = message.getPayloadLength();
+            String headers = headers(message);
+            this.droppable = headers.contains(DROPPABLE_LINE);
+            this.destination = droppable ? headerValue(headers, DESTINATION_LINE) : null;
+        }
+
+        private static String headers(WebSocketMessage<?> message) {
+            if (message instanceof TextMessage) {
+                String payload = ((TextMessage) message).getPayload();
+                int end = payload.indexOf("\n\n");
+                return payload.substring(0, end >= 0 ? end : Math.min(payload.length(), MAX_HEADER_BYTES));
+            }
+            if (message instanceof BinaryMessage) {
+                ByteBuffer payload = ((BinaryMessage) message).getPayload().duplicate();
+                byte[] bytes = new byte[Math.min(payload.remaining(), MAX_HEADER_BYTES)];
+                payload.get(bytes);
+                String headers = new String(bytes, StandardCharsets.ISO_8859_1);
+                int end = headers.indexOf("\n\n");
+                return end >= 0 ? headers.substring(0, end) : headers;
+            }
+            return "";
+        }
+
+        private static String headerValue(String headers, String line) {
+            int start = headers.indexOf(line);
+            if (start < 0) {
+                return null;
+            }
+            start += line.length();
+            int end = headers.indexOf('\n', start);
+            return headers.substring(start, end >= 0 ? end : headers.length());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.kmarzecki.communicator.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.kmarzecki.communicator.util.MessageUtils.PAYLOAD_FORMAT_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.SOURCE_PAYLOAD_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.isJsonPayload;
+
+/**
+ * Outbound channel interceptor re-encoding JSON payloads as CBOR for the sessions which asked for it
+ * with the payload-format header of their CONNECT frame
+ * CBOR payloads are sent with the application/octet-stream content type, so they go out as binary websocket frames,
+ * only sessions of the raw websocket endpoint, marked by the handshake interceptor, can negotiate them.
+ * The object a payload has been encoded from, kept in the source payload header by the message sender,
+ * is encoded directly with a CBOR object mapper, only payloads without it are transcoded from their JSON bytes.
+ * Payloads are shared by all the recipients of a message, so they are encoded once per payload.
+ */
+@Slf4j
+@Component
+public class CborPayloadTranscoder implements ChannelInterceptor, HandshakeInterceptor,
+        ApplicationListener<SessionDisconnectEvent> {
+    private static final String CBOR = "cbor";
+    private static final String BINARY_FRAMES = "communicatorBinaryFrames";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    private final Map<byte[], byte[]> encoded = Collections.synchronizedMap(new WeakHashMap<>());
+    private final DistributionSummary jsonBytes;
+    private final DistributionSummary cborBytes;
+
+    public CborPayloadTranscoder(MeterRegistry meterRegistry) {
+        this.jsonBytes = payloadSummary(meterRegistry, "json");
+        this.cborBytes = payloadSummary(meterRegistry, CBOR);
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request,
+                                   ServerHttpResponse response,
+                                   WebSocketHandler handler,
+                                   Map<String, Object> attributes) {
+        attributes.put(BINARY_FRAMES, true);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request,
+                               ServerHttpResponse response,
+                               WebSocketHandler handler,
+                               Exception exception) {
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (SimpMessageType.CONNECT_ACK.equals(type) && requestsCbor(headers)) {
+            sessions.add(sessionId);
+            return message;
+        }
+        if (!SimpMessageType.MESSAGE.equals(type) || !sessions.contains(sessionId) || !isJsonPayload(message)) {
+            return message;
+        }
+        byte[] payload = (byte[]) message.getPayload();
+        byte[] cbor = encoded.get(payload);
+        if (cbor == null) {
+            try {
+                cbor = encode(payload, headers.get(SOURCE_PAYLOAD_HEADER));
+            } catch (IOException e) {
+                log.warn("Failed to encode a payload sent to {}", SimpMessageHeaderAccessor.getDestination(headers), e);
+                return message;
+            }
+            encoded.put(payload, cbor);
+            jsonBytes.record(payload.length);
+            cborBytes.record(cbor.length);
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+
+    @Override
+    public void onApplicationEvent(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    /**
+     * @param json JSON bytes of the payload
+     * @param source object the JSON bytes have been encoded from, null if unknown
+     * @return CBOR bytes of the payload
+     */
+    byte[] encode(byte[] json, Object source) throws IOException {
+        if (source != null) {
+            return cborMapper.writeValueAsBytes(source);
+        }
+        return transcode(json);
+    }
+
+    private byte[] transcode(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonFactory.createParser(json);
+             JsonGenerator generator = cborMapper.getFactory().createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean requestsCbor(MessageHeaders headers) {
+        Message<?> connect = (Message<?>) headers.get(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER);
+        if (connect == null) {
+            return false;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(connect);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        return attributes != null && attributes.containsKey(BINARY_FRAMES)
+                && CBOR.equalsIgnoreCase(accessor.getFirstNativeHeader(PAYLOAD_FORMAT_HEADER));
+    }
+
+    private static DistributionSummary payloadSummary(MeterRegistry meterRegistry, String format) {
+        return DistributionSummary.builder("communicator.websocket.payload")
+                .baseUnit("bytes")
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,174 @@
+package com.kmarzecki.communicator.api;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.kmarzecki.communicator.util.MessageUtils.BATCH_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.COALESCE_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.DROPPABLE_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.SOURCE_PAYLOAD_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.isJsonPayload;
+
+/**
+ * Outbound channel interceptor coalescing JSON messages sent to the same subscription of a session
+ * into a single frame, whose body is an array of the payloads and whose batch header holds their number
+ * Sessions opt in with the coalesce header of their CONNECT frame. A batch is sent once the coalescing window
+ * elapses or when it reaches the maximum number of messages.
+ */
+@Component
+public class FrameCoalescer implements ChannelInterceptor, ApplicationListener<SessionDisconnectEvent> {
+    private static final String COALESCED = "communicatorCoalesced";
+
+    private final long window;
+    private final int maxMessages;
+    private final ScheduledExecutorService scheduler;
+    private final DistributionSummary batchSize;
+    private final Map<String, Map<String, Batch>> sessions = new ConcurrentHashMap<>();
+
+    public FrameCoalescer(WebSocketProperties properties, MeterRegistry meterRegistry) {
+        this.window = properties.getCoalesceWindow().toMillis();
+        this.maxMessages = properties.getCoalesceMaxMessages();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("websocket-coalesce-"));
+        this.batchSize = DistributionSummary.builder("communicator.websocket.coalesced")
+                .baseUnit("messages")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (SimpMessageType.CONNECT_ACK.equals(type) && window > 0 && requestsCoalescing(headers)) {
+            sessions.put(sessionId, new HashMap<>());
+            return message;
+        }
+        if (!SimpMessageType.MESSAGE.equals(type) || headers.containsKey(COALESCED) || !isJsonPayload(message)) {
+            return message;
+        }
+        Map<String, Batch> batches = sessions.get(sessionId);
+        if (batches == null) {
+            return message;
+        }
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        synchronized (batches) {
+            Batch batch = batches.get(subscriptionId);
+            if (batch == null) {
+                Batch created = new Batch(message);
+                batches.put(subscriptionId, created);
+                scheduler.schedule(() -> flush(channel, batches, subscriptionId, created), window, TimeUnit.MILLISECONDS);
+                return null;
+            }
+            batch.messages.add(message);
+            if (batch.messages.size() < maxMessages) {
+                return null;
+            }
+            batches.remove(subscriptionId);
+            return batch.toMessage();
+        }
+    }
+
+    /**
+     * Forget the batches of a closed session
+     */
+    @Override
+    public void onApplicationEvent(SessionDisconnectEvent event) {
+        Map<String, Batch> batches = sessions.remove(event.getSessionId());
+        if (batches != null) {
+            synchronized (batches) {
+                batches.clear();
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private void flush(MessageChannel channel, Map<String, Batch> batches, String subscriptionId, Batch batch) {
+        synchronized (batches) {
+            if (!batches.remove(subscriptionId, batch)) {
+                return;
+            }
+        }
+        channel.send(batch.toMessage());
+    }
+
+    private static boolean requestsCoalescing(MessageHeaders headers) {
+        Message<?> connect = (Message<?>) headers.get(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER);
+        if (connect == null) {
+            return false;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(connect);
+        return Boolean.parseBoolean(accessor.getFirstNativeHeader(COALESCE_HEADER));
+    }
+
+    /**
+     * Messages collected for one subscription of a session
+     */
+    private class Batch {
+        private final List<Message<?>> messages = new ArrayList<>();
+
+        private Batch(Message<?> first) {
+            messages.add(first);
+        }
+
+        /**
+         * @return the single collected message or a message with the array of collected payloads,
+         * marked so that it passes the interceptor, whose source payload is the list of the collected ones
+         */
+        private Message<?> toMessage() {
+            batchSize.record(messages.size());
+            Message<?> first = messages.get(0);
+            if (messages.size() == 1) {
+                return MessageBuilder.fromMessage(first).setHeader(COALESCED, true).build();
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            body.write('[');
+            boolean droppable = true;
+            List<Object> sources = new ArrayList<>(messages.size());
+            for (Message<?> message : messages) {
+                if (body.size() > 1) {
+                    body.write(',');
+                }
+                byte[] payload = (byte[]) message.getPayload();
+                body.write(payload, 0, payload.length);
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+                droppable &= Boolean.parseBoolean(accessor.getFirstNativeHeader(DROPPABLE_HEADER));
+                sources.add(message.getHeaders().get(SOURCE_PAYLOAD_HEADER));
+            }
+            body.write(']');
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(first);
+            accessor.setNativeHeader(BATCH_HEADER, String.valueOf(messages.size()));
+            if (!droppable) {
+                accessor.removeNativeHeader(DROPPABLE_HEADER);
+            }
+            accessor.setHeader(SOURCE_PAYLOAD_HEADER, sources.contains(null) ? null : sources);
+            accessor.setHeader(COALESCED, true);
+            return MessageBuilder.createMessage(body.toByteArray(), accessor.getMessageHeaders());
+        }
+    }
+}
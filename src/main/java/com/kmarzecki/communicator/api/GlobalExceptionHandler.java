@@ -1,13 +1,16 @@
 package com.kmarzecki.communicator.api;
 
 import com.kmarzecki.communicator.exception.OperationNotPermittedException;
+import com.kmarzecki.communicator.exception.ServiceOverloadedException;
+import com.kmarzecki.communicator.util.MessageSender;
 import com.kmarzecki.communicator.util.MessageUtils;
+import io.jsonwebtoken.JwtException;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.AuthenticationException;
@@ -20,18 +23,28 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 @ControllerAdvice
 @AllArgsConstructor
 public class GlobalExceptionHandler {
-    private final SimpMessageSendingOperations messagingTemplate;
+    private final MessageSender messageSender;
 
     /**
      * Handler for exceptions related to authentication
      * @param t Thrown exception
      * @return Error response
      */
-    @ExceptionHandler({BadCredentialsException.class, AuthenticationException.class})
+    @ExceptionHandler({BadCredentialsException.class, AuthenticationException.class, JwtException.class})
     public ResponseEntity<?> handleAuthenticationException(Throwable t){
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     }
 
+    /**
+     * Handler for exceptions caused by malformed request parameters
+     * @param t Thrown exception
+     * @return Error Response
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<?> handleIllegalArgumentException(IllegalArgumentException t){
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(t.getMessage());
+    }
+
     /**
      * Handler for exceptions related to forbidden operations attempted by a user
      * @param t Thrown exception
@@ -40,10 +53,21 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(OperationNotPermittedException.class)
     public ResponseEntity<?> handleOperationNotPermittedException(OperationNotPermittedException t){
         t.getUser()
-                .ifPresent(user -> MessageUtils.sendError(messagingTemplate, user, t.getMessage()));
+                .ifPresent(user -> MessageUtils.sendError(messageSender, user, t.getMessage()));
         return ResponseEntity.status(HttpStatus.FORBIDDEN).body(t.getMessage());
     }
 
+    /**
+     * Handler for requests rejected due to overload
+     * @param t Thrown exception
+     * @return Error Response asking the client to retry later
+     */
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<?> handleServiceOverloadedException(ServiceOverloadedException t){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(t.getRetryAfterSeconds()))
+                .body(t.getMessage());
+    }
 
     /**
      * Handler for exceptions thrown during handling by a message-handling code
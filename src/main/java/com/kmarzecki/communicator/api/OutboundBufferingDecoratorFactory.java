@@ -0,0 +1,126 @@
+package com.kmarzecki.communicator.api;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorator factory giving every websocket session its own outbound buffer,
+ * written to the client on a shared flush executor
+ * A write blocked on a slow client holds a flush thread, a watchdog closes sessions whose write has taken
+ * longer than the send time limit, so the thread is freed even when no further frames are sent to the session.
+ */
+@Slf4j
+@Component
+public class OutboundBufferingDecoratorFactory implements WebSocketHandlerDecoratorFactory {
+    private static final String CUT_OFF = "communicator.websocket.sessions.cut_off";
+    private static final String DROPPED = "communicator.websocket.frames.dropped";
+    private static final int WATCHDOG_CHECKS_PER_LIMIT = 4;
+
+    private final WebSocketProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService flushExecutor;
+    private final ScheduledExecutorService watchdog =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("websocket-send-watchdog-"));
+    private final Set<BufferedWebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong totalBuffered = new AtomicLong();
+    private final DistributionSummary sessionBuffered;
+
+    public OutboundBufferingDecoratorFactory(WebSocketProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.flushExecutor = Executors.newFixedThreadPool(
+                properties.getFlushThreads(),
+                new CustomizableThreadFactory("websocket-flush-"));
+        this.sessionBuffered = DistributionSummary.builder("communicator.websocket.session.buffered")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("communicator.websocket.buffered", totalBuffered, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        long checkInterval = Math.max(1, properties.getSendTimeLimit().toMillis() / WATCHDOG_CHECKS_PER_LIMIT);
+        watchdog.scheduleWithFixedDelay(this::checkSendTimes, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            private final Map<String, BufferedWebSocketSession> sessions = new ConcurrentHashMap<>();
+
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                BufferedWebSocketSession buffered = new BufferedWebSocketSession(
+                        session,
+                        OutboundBufferingDecoratorFactory.this,
+                        flushExecutor,
+                        properties.getOverflowPolicy(),
+                        properties.getSendBufferSizeLimit().toBytes(),
+                        properties.getSendTimeLimit().toMillis());
+                sessions.put(session.getId(), buffered);
+                OutboundBufferingDecoratorFactory.this.sessions.add(buffered);
+                super.afterConnectionEstablished(buffered);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                BufferedWebSocketSession buffered = sessions.remove(session.getId());
+                if (buffered != null) {
+                    OutboundBufferingDecoratorFactory.this.sessions.remove(buffered);
+                    buffered.release();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        watchdog.shutdown();
+        flushExecutor.shutdown();
+    }
+
+    private void checkSendTimes() {
+        long now = System.currentTimeMillis();
+        for (BufferedWebSocketSession session : sessions) {
+            try {
+                session.checkSendTime(now);
+            } catch (RuntimeException e) {
+                log.warn("Failed to check the send time of session {}", session.getId(), e);
+            }
+        }
+    }
+
+    void updateTotalBuffered(long delta) {
+        totalBuffered.addAndGet(delta);
+    }
+
+    void recordBuffered(long bytes) {
+        sessionBuffered.record(bytes);
+    }
+
+    void recordDropped(String reason) {
+        meterRegistry.counter(DROPPED, "reason", reason).increment();
+    }
+
+    void recordCutOff(String reason) {
+        meterRegistry.counter(CUT_OFF, "reason", reason).increment();
+    }
+}
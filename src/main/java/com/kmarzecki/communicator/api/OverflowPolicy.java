@@ -0,0 +1,20 @@
+package com.kmarzecki.communicator.api;
+
+/**
+ * Policy applied to a session whose outbound buffer exceeds its limit
+ */
+public enum OverflowPolicy {
+    /**
+     * Close the session
+     */
+    DISCONNECT,
+    /**
+     * Drop the oldest droppable frames, closing the session if that is not enough
+     */
+    DROP,
+    /**
+     * Replace buffered droppable frames with newer frames for the same destination,
+     * then drop the oldest droppable frames, closing the session if that is not enough
+     */
+    COALESCE
+}
@@ -0,0 +1,41 @@
+package com.kmarzecki.communicator.api;
+
+import com.kmarzecki.communicator.exception.ServiceOverloadedException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.StompSubProtocolErrorHandler;
+
+/**
+ * Error handler turning failures of client frames into STOMP ERROR frames
+ * Frames rejected due to overload carry a retry-after header with the number of seconds to wait before reconnecting.
+ */
+@Component
+public class StompErrorHandler extends StompSubProtocolErrorHandler {
+    private static final String RETRY_AFTER_HEADER = "retry-after";
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    @Override
+    public Message<byte[]> handleClientMessageProcessingError(Message<byte[]> clientMessage, Throwable ex) {
+        Throwable cause = rootCause(ex);
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+        accessor.setMessage(cause.getMessage());
+        if (cause instanceof ServiceOverloadedException) {
+            long seconds = ((ServiceOverloadedException) cause).getRetryAfterSeconds();
+            accessor.setNativeHeader(RETRY_AFTER_HEADER, String.valueOf(seconds));
+        }
+        accessor.setLeaveMutable(true);
+        return handleInternal(accessor, EMPTY_PAYLOAD, cause, clientMessage != null
+                ? StompHeaderAccessor.wrap(clientMessage)
+                : null);
+    }
+
+    private static Throwable rootCause(Throwable ex) {
+        Throwable cause = ex;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -1,33 +1,90 @@
 package com.kmarzecki.communicator.api;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.MimeType;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 /**
  * Web socket broker configuration
+ * Sizes of the channel thread pools, heartbeats and transport limits are taken from {@link WebSocketProperties}
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketBrokerConfig implements WebSocketMessageBrokerConfigurer {
+    private static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final WebSocketProperties properties;
+    private final StompErrorHandler errorHandler;
+    private final OutboundBufferingDecoratorFactory outboundBuffering;
+    private final FrameCoalescer frameCoalescer;
+    private final CborPayloadTranscoder cborTranscoder;
+    private final TaskScheduler heartbeatScheduler;
+    private final ThreadPoolTaskExecutor inboundExecutor = new ThreadPoolTaskExecutor();
+    private final ThreadPoolTaskExecutor outboundExecutor = new ThreadPoolTaskExecutor();
+    private final ThreadPoolTaskExecutor brokerExecutor = new ThreadPoolTaskExecutor();
+
+    public WebSocketBrokerConfig(WebSocketProperties properties,
+                                 StompErrorHandler errorHandler,
+                                 OutboundBufferingDecoratorFactory outboundBuffering,
+                                 FrameCoalescer frameCoalescer,
+                                 CborPayloadTranscoder cborTranscoder,
+                                 MeterRegistry meterRegistry,
+                                 @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler heartbeatScheduler) {
+        this.properties = properties;
+        this.errorHandler = errorHandler;
+        this.outboundBuffering = outboundBuffering;
+        this.frameCoalescer = frameCoalescer;
+        this.cborTranscoder = cborTranscoder;
+        this.heartbeatScheduler = heartbeatScheduler;
+        registerGauges(meterRegistry, "inbound", inboundExecutor);
+        registerGauges(meterRegistry, "outbound", outboundExecutor);
+        if (properties.getBroker().getCorePoolSize() > 0) {
+            registerGauges(meterRegistry, "broker", brokerExecutor);
+        }
+    }
 
     /**
      * Configuration method called by Spring
      * Enables a broker for a destination to which a client can subscribe
      * Sets a prefix to which clients can send messages to
+     * Keeps the order in which the broker publishes messages to a session, so messages of a channel arrive
+     * in sequence number order
      * @param config MessageBrokerRegistry object
      */
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic/");
+        config.enableSimpleBroker("/topic/")
+                .setHeartbeatValue(new long[]{
+                        properties.getServerHeartbeat().toMillis(),
+                        properties.getClientHeartbeat().toMillis()})
+                .setTaskScheduler(heartbeatScheduler);
         config.setApplicationDestinationPrefixes("/app");
+        config.setPreservePublishOrder(true);
+        if (properties.getBroker().getCorePoolSize() > 0) {
+            configure(config.configureBrokerChannel(), brokerExecutor, properties.getBroker());
+        }
     }
 
     /**
      * Configuration method called by Spring
-     * Adds a STOMP endpoint to which clients can connect
+     * Adds STOMP endpoints to which clients can connect, with SockJS fallbacks and over raw websockets,
+     * which can also carry CBOR payloads, and the handler turning rejected client frames into ERROR frames
      * @param registry StompEndpointRegistry object
      */
     @Override
@@ -35,5 +92,85 @@ public class WebSocketBrokerConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws_endpoint")
                 .setAllowedOrigins("*")
                 .withSockJS();
+        registry.addEndpoint("/ws_native")
+                .setAllowedOrigins("*")
+                .addInterceptors(cborTranscoder);
+        registry.setErrorHandler(errorHandler);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        configure(registration, inboundExecutor, properties.getInbound());
+    }
+
+    /**
+     * Configuration method called by Spring
+     * Sets the outbound executor, coalesces messages and transcodes their payloads for the sessions asking for it
+     * @param registration ChannelRegistration object
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(frameCoalescer, cborTranscoder);
+        configure(registration, outboundExecutor, properties.getOutbound());
+    }
+
+    /**
+     * Configuration method called by Spring
+     * Adds a converter of CBOR payloads sent by clients with the application/cbor content type,
+     * before the default converters, its strict content type match keeps JSON the default for outbound payloads
+     * @param messageConverters list of custom converters
+     * @return true to keep the default converters
+     */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        MappingJackson2MessageConverter cborConverter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        cborConverter.setObjectMapper(Jackson2ObjectMapperBuilder.cbor().build());
+        cborConverter.setStrictContentTypeMatch(true);
+        messageConverters.add(cborConverter);
+        return true;
+    }
+
+    /**
+     * Configuration method called by Spring
+     * Sets transport limits and buffers outbound frames per session, so slow clients are handled
+     * by the configured overflow policy instead of holding outbound channel threads
+     * @param registry WebSocketTransportRegistration object
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registry) {
+        registry.setSendTimeLimit((int) properties.getSendTimeLimit().toMillis())
+                .setSendBufferSizeLimit((int) properties.getSendBufferSizeLimit().toBytes())
+                .setMessageSizeLimit((int) properties.getMessageSizeLimit().toBytes())
+                .addDecoratorFactory(outboundBuffering);
+    }
+
+    private static void configure(ChannelRegistration registration,
+                                  ThreadPoolTaskExecutor executor,
+                                  WebSocketProperties.ChannelPool pool) {
+        registration.taskExecutor(executor)
+                .corePoolSize(pool.getCorePoolSize())
+                .maxPoolSize(Math.max(pool.getCorePoolSize(), pool.getMaxPoolSize()))
+                .queueCapacity(pool.getQueueCapacity())
+                .keepAliveSeconds((int) pool.getKeepAlive().getSeconds());
+    }
+
+    private static void registerGauges(MeterRegistry meterRegistry, String channel, ThreadPoolTaskExecutor executor) {
+        Gauge.builder("communicator.websocket.executor.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("communicator.websocket.executor.pool", executor, ThreadPoolTaskExecutor::getPoolSize)
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("communicator.websocket.executor.queued", executor, WebSocketBrokerConfig::queueSize)
+                .tag("channel", channel)
+                .register(meterRegistry);
+    }
+
+    private static int queueSize(ThreadPoolTaskExecutor executor) {
+        try {
+            return executor.getThreadPoolExecutor().getQueue().size();
+        } catch (IllegalStateException e) {
+            return 0;
+        }
     }
-}
\ No newline at end of file
+}
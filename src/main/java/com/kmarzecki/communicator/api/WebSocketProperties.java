@@ -0,0 +1,103 @@
+package com.kmarzecki.communicator.api;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the websocket transport, the message channels and the broker
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.websocket")
+@Getter
+@Setter
+public class WebSocketProperties {
+    private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * Executor of frames received from clients
+     */
+    private ChannelPool inbound = new ChannelPool(DEFAULT_POOL_SIZE);
+    /**
+     * Executor of frames sent to clients
+     */
+    private ChannelPool outbound = new ChannelPool(DEFAULT_POOL_SIZE);
+    /**
+     * Executor of messages sent to the broker, messages are passed to the broker on the sending thread if the pool size is 0
+     * A pool of more than one thread may publish messages of a channel out of their sequence number order
+     */
+    private ChannelPool broker = new ChannelPool(0);
+    /**
+     * Interval in which the broker sends heartbeats, 0 to disable
+     */
+    private Duration serverHeartbeat = Duration.ofSeconds(10);
+    /**
+     * Interval in which the broker expects client heartbeats, 0 to disable
+     */
+    private Duration clientHeartbeat = Duration.ofSeconds(10);
+    /**
+     * Maximum time a send to a single client may take before the session is closed
+     */
+    private Duration sendTimeLimit = Duration.ofSeconds(10);
+    /**
+     * Maximum amount of data buffered for a slow client before the session is closed
+     */
+    private DataSize sendBufferSizeLimit = DataSize.ofKilobytes(512);
+    /**
+     * Maximum size of an incoming STOMP message
+     */
+    private DataSize messageSizeLimit = DataSize.ofKilobytes(64);
+    /**
+     * What happens to a session whose outbound buffer exceeds the send buffer size limit
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DISCONNECT;
+    /**
+     * Number of threads writing buffered frames to client connections
+     * A write blocked on a slow client holds one of them for at most the send time limit.
+     */
+    private int flushThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Time for which messages to a subscription of a session asking for coalescing are collected into one frame,
+     * 0 to disable coalescing
+     */
+    private Duration coalesceWindow = Duration.ofMillis(5);
+    /**
+     * Maximum number of messages coalesced into one frame
+     */
+    private int coalesceMaxMessages = 64;
+
+    /**
+     * Thread pool of a message channel
+     */
+    @Getter
+    @Setter
+    public static class ChannelPool {
+        /**
+         * Number of threads kept in the pool
+         */
+        private int corePoolSize;
+        /**
+         * Maximum number of threads, only reached when the queue is full
+         */
+        private int maxPoolSize = Integer.MAX_VALUE;
+        /**
+         * Maximum number of messages waiting for a thread, messages beyond it are rejected
+         */
+        private int queueCapacity = Integer.MAX_VALUE;
+        /**
+         * Time after which threads above the core pool size are stopped
+         */
+        private Duration keepAlive = Duration.ofSeconds(60);
+
+        public ChannelPool() {
+        }
+
+        ChannelPool(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -26,25 +27,38 @@ public class AuthController {
     /**
      * Login a user
      * @param request Request containing login information
-     * @return logged user response
+     * @return logged user response, completed once the password is verified
      */
     @PostMapping("/login")
-    public LoginResponse login(
+    public CompletableFuture<LoginResponse> login(
             @RequestBody @Validated LoginRequest request
     ) {
         return authenticationService.login(new LoginDto(request.getUsername(), request.getPassword()));
     }
 
+    /**
+     * Exchange a refresh token for new tokens
+     * @param request Request containing the refresh token
+     * @return logged user response
+     */
+    @PostMapping("/refresh")
+    public LoginResponse refresh(
+            @RequestBody @Validated RefreshRequest request
+    ) {
+        return authenticationService.refresh(request.getRefreshToken());
+    }
+
     /**
      * Register a user
      * @param request Request containing registration information
      * @param language user language
+     * @return future completed once the user is registered
      */
     @PostMapping("/register")
-    public void register(@RequestBody RegisterRequest request,
+    public CompletableFuture<Void> register(@RequestBody RegisterRequest request,
                          @RequestParam(name = "language") Language language
     ) {
-        authenticationService.register(new RegisterDto(request.getUsername(), request.getPassword()), language);
+        return authenticationService.register(new RegisterDto(request.getUsername(), request.getPassword()), language);
     }
 
     /**
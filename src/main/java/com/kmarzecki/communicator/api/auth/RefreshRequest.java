@@ -0,0 +1,19 @@
+package com.kmarzecki.communicator.api.auth;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotBlank;
+
+/**
+ * Request exchanging a refresh token for new tokens
+ */
+@Setter
+@Getter
+public class RefreshRequest {
+    /**
+     * Refresh token received at login or at a previous refresh
+     */
+    @NotBlank
+    private String refreshToken;
+}
@@ -1,9 +1,15 @@
 package com.kmarzecki.communicator.api.conversation;
 
 import com.kmarzecki.communicator.model.Language;
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
 import com.kmarzecki.communicator.service.ConversationService;
 import lombok.AllArgsConstructor;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.handler.annotation.support.MethodArgumentNotValidException;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
@@ -28,6 +34,59 @@ public class ConversationController {
         conversationService.getUserChannels(principal);
     }
 
+    /**
+     * Get messages sent to the channels of the user while the user was disconnected
+     * @param request Ids of the last messages seen by the user
+     * @param principal Principal of the user
+     */
+    @MessageMapping("/sync")
+    public void sync(@Payload @Valid SyncRequest request, Principal principal) {
+        conversationService.sync(principal.getName(), request.getLastSeen());
+    }
+
+    /**
+     * Get messages of a channel with sequence numbers in a range, to fill a gap in the messages seen by the user
+     * @param request Channel and the range of sequence numbers
+     * @param principal Principal of the user
+     */
+    @MessageMapping("/messages_range")
+    public void getMessageRange(@Payload @Valid MessageRangeRequest request, Principal principal) {
+        conversationService.getMessageRange(
+                principal.getName(),
+                request.getChannelId(),
+                request.getFromSeq(),
+                request.getToSeq());
+    }
+
+    /**
+     * Get conversation channels which received messages while the user was offline
+     * @param principal Principal of the user
+     */
+    @MessageMapping("/inbox")
+    public void drainInbox(Principal principal) {
+        conversationService.drainInbox(principal.getName());
+    }
+
+    /**
+     * Mark a conversation channel as read up to a message
+     * @param request Channel and the last message read by the user
+     * @param principal Principal of the user
+     */
+    @MessageMapping("/read")
+    public void markRead(@Payload @Valid ReadRequest request, Principal principal) {
+        conversationService.markRead(principal.getName(), request.getChannelId(), request.getMessageId());
+    }
+
+    /**
+     * Show other members of a conversation channel that the user is typing
+     * @param request Channel the user is typing in
+     * @param principal Principal of the user
+     */
+    @MessageMapping("/typing")
+    public void typing(@Payload @Valid TypingRequest request, Principal principal) {
+        conversationService.typing(principal.getName(), request.getChannelId());
+    }
+
     /**
      * Create a conversation channel
      * @param request Information about the new conversation channel
@@ -43,6 +102,33 @@ public class ConversationController {
         conversationService.createChannel(request.getName(), request.getUsernames(),language,  principal);
     }
 
+    /**
+     * Send a message over the websocket connection of the user
+     * @param request Information about the sent message
+     * @param principal Principal of the requesting user
+     */
+    @MessageMapping("/message")
+    public void sendMessage(@Payload @Valid MessageRequest request, Principal principal) {
+        conversationService.message(principal.getName(), request);
+    }
+
+    /**
+     * Handler for invalid requests sent over the websocket connection of the user
+     * Rejects invalid messages to their sender, so that they are not resent
+     * @param e Thrown exception
+     * @param principal Principal of the requesting user
+     * @return Message string
+     */
+    @MessageExceptionHandler(MethodArgumentNotValidException.class)
+    @SendToUser("/queue/errors")
+    public String handleInvalidRequest(MethodArgumentNotValidException e, Principal principal) {
+        BindingResult result = e.getBindingResult();
+        if (result != null && result.getTarget() instanceof MessageRequest) {
+            conversationService.rejectMessage(principal.getName(), (MessageRequest) result.getTarget(), "Invalid message");
+        }
+        return e.getMessage();
+    }
+
     /**
      * Send a message
      * @param request Information about the sent message
@@ -70,17 +156,24 @@ public class ConversationController {
     }
 
     /**
-     * Get messages from a channel, before a specific time
+     * Get a page of messages from a channel, before a cursor or a specific time
      * @param channelId Id of the channel
-     * @param before UNIX timestamp time boundary
+     * @param cursor Cursor returned with the previous page
+     * @param before UNIX timestamp time boundary, used when no cursor is given
+     * @param size Requested page size
      * @param principal Principal of the requesting user
      */
     @GetMapping(path = "previous_messages")
     public void getPreviousMessages (
             @RequestParam(name = "channelId") Integer channelId,
-            @RequestParam(name = "before") Long before,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "before", required = false) Long before,
+            @RequestParam(name = "size", required = false) Integer size,
             Principal principal
     ) {
-        conversationService.getPreviousMessages(principal, channelId, before);
+        MessageCursor messageCursor = cursor != null
+                ? MessageCursor.decode(cursor)
+                : before != null ? MessageCursor.before(before) : null;
+        conversationService.getPreviousMessages(principal, channelId, messageCursor, size);
     }
 }
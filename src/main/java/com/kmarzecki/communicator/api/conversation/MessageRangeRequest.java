@@ -0,0 +1,32 @@
+package com.kmarzecki.communicator.api.conversation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Request for messages of a channel with sequence numbers in a range, used by clients to fill gaps
+ */
+@Getter
+@Setter
+public class MessageRangeRequest {
+    /**
+     * Id of the channel
+     */
+    @NotNull
+    private Integer channelId;
+    /**
+     * First requested sequence number, inclusive
+     */
+    @NotNull
+    @Min(1)
+    private Long fromSeq;
+    /**
+     * Last requested sequence number, inclusive
+     */
+    @NotNull
+    @Min(1)
+    private Long toSeq;
+}
@@ -22,4 +22,9 @@ public class MessageRequest {
      */
     @NotBlank
     private String payload;
+    /**
+     * Optional id chosen by the sender, acknowledged back once the message is accepted or rejected,
+     * a message resent with the same id is acknowledged again without being stored twice
+     */
+    private String correlationId;
 }
@@ -0,0 +1,24 @@
+package com.kmarzecki.communicator.api.conversation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Request marking a channel as read up to a message
+ */
+@Getter
+@Setter
+public class ReadRequest {
+    /**
+     * Id of the read channel
+     */
+    @NotNull
+    private Integer channelId;
+    /**
+     * Id of the last message read by the user
+     */
+    @NotNull
+    private Integer messageId;
+}
@@ -0,0 +1,20 @@
+package com.kmarzecki.communicator.api.conversation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+import java.util.Map;
+
+/**
+ * Request for messages missed while disconnected
+ */
+@Getter
+@Setter
+public class SyncRequest {
+    /**
+     * Id of the last message seen by the client, keyed by channel id, channels the client does not know are synced from the start
+     */
+    @NotNull
+    private Map<Integer, Integer> lastSeen;
+}
@@ -0,0 +1,19 @@
+package com.kmarzecki.communicator.api.conversation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Request signalling that the user is typing in a channel
+ */
+@Getter
+@Setter
+public class TypingRequest {
+    /**
+     * Id of the channel the user is typing in
+     */
+    @NotNull
+    private Integer channelId;
+}
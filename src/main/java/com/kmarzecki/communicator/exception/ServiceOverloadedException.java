@@ -0,0 +1,28 @@
+package com.kmarzecki.communicator.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Exception indicating that a request was rejected because the service is at its capacity
+ */
+@Getter
+public class ServiceOverloadedException extends RuntimeException {
+    /**
+     * Time after which the client may retry
+     */
+    private final Duration retryAfter;
+
+    public ServiceOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return time after which the client may retry, rounded up to whole seconds
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -15,4 +15,8 @@ public class LoginResponse {
      * An authentication token
      */
     String token;
+    /**
+     * A token which can be exchanged for new tokens at the refresh endpoint
+     */
+    String refreshToken;
 }
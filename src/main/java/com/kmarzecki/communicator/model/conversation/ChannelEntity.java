@@ -2,6 +2,8 @@ package com.kmarzecki.communicator.model.conversation;
 
 import com.kmarzecki.communicator.model.auth.UserEntity;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import java.util.Set;
@@ -20,7 +22,15 @@ public class ChannelEntity {
      * Channel Id
      */
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "channel_id")
+    @GenericGenerator(
+            name = "channel_id",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "channel_seq"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled-lo")
+            })
     private Integer id;
     /**
      * Channel name
@@ -12,4 +12,10 @@ public class ChannelListResponse {
     String name;
     List<String> users;
     Long createTime;
+    Integer memberCount;
+    String lastMessagePreview;
+    String lastMessageUsername;
+    Long lastMessageTime;
+    Integer lastReadMessageId;
+    Integer unreadCount;
 }
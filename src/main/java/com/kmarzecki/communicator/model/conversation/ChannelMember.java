@@ -0,0 +1,10 @@
+package com.kmarzecki.communicator.model.conversation;
+
+/**
+ * Projection of a single membership of a conversation channel
+ */
+public interface ChannelMember {
+    Integer getChannelId();
+
+    String getUsername();
+}
@@ -0,0 +1,10 @@
+package com.kmarzecki.communicator.model.conversation;
+
+/**
+ * Projection of a conversation channel without its members
+ */
+public interface ChannelSummary {
+    Integer getId();
+
+    String getName();
+}
@@ -0,0 +1,24 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Response listing channels which received messages while the user was offline
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class InboxResponse {
+    /**
+     * Ids of the channels, in the order of their first message
+     */
+    List<Integer> channelIds;
+    /**
+     * Whether more channels received messages than the inbox could hold
+     */
+    boolean truncated;
+}
@@ -0,0 +1,39 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Response acknowledging a message accepted for storage to its sender, or telling the sender it has been rejected
+ * A message may be acknowledged before it is written, when the store writes messages behind
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class MessageAckResponse {
+    /**
+     * Correlation id given by the sender in the message request
+     */
+    String correlationId;
+    /**
+     * Reason the message has been rejected for, null for accepted messages
+     */
+    String error;
+    /**
+     * Id assigned to the message
+     */
+    Integer id;
+    /**
+     * Channel the message has been sent to
+     */
+    Integer channelId;
+    /**
+     * Sequence number assigned to the message in its channel
+     */
+    Long seq;
+    /**
+     * Time at which the message has been accepted, as a UNIX timestamp
+     */
+    Long time;
+}
@@ -0,0 +1,79 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Position in the history of a channel, ordered by message time and id
+ * Encoded for clients as an opaque string
+ */
+@Value
+public class MessageCursor {
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Time of the message at the position
+     */
+    LocalDateTime time;
+    /**
+     * Id of the message at the position
+     */
+    Integer id;
+
+    /**
+     * @param message message
+     * @return cursor pointing at the message
+     */
+    public static MessageCursor of(MessageEntity message) {
+        return new MessageCursor(message.getTime(), message.getId());
+    }
+
+    /**
+     * @param epochSecond UNIX timestamp
+     * @return cursor pointing before every message sent at or after the timestamp
+     */
+    public static MessageCursor before(Long epochSecond) {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).minusNanos(1);
+        return new MessageCursor(time, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param encoded cursor encoded with {@link #encode()}
+     * @return decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static MessageCursor decode(String encoded) {
+        String[] parts = encoded.split(SEPARATOR);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed cursor " + encoded);
+        }
+        try {
+            LocalDateTime time = LocalDateTime.ofEpochSecond(
+                    Long.parseLong(parts[0]),
+                    Integer.parseInt(parts[1]),
+                    ZoneOffset.UTC);
+            return new MessageCursor(time, Integer.valueOf(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed cursor " + encoded, e);
+        }
+    }
+
+    /**
+     * @param time time of a message
+     * @param id id of a message
+     * @return true if the cursor points after the message
+     */
+    public boolean isAfter(LocalDateTime time, Integer id) {
+        int byTime = this.time.compareTo(time);
+        return byTime > 0 || byTime == 0 && this.id > id;
+    }
+
+    /**
+     * @return cursor encoded as a string
+     */
+    public String encode() {
+        return time.toEpochSecond(ZoneOffset.UTC) + SEPARATOR + time.getNano() + SEPARATOR + id;
+    }
+}
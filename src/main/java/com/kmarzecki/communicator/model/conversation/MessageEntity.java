@@ -3,10 +3,19 @@ package com.kmarzecki.communicator.model.conversation;
 import com.kmarzecki.communicator.model.auth.UserEntity;
 import lombok.*;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
 import java.time.LocalDateTime;
 
 /**
@@ -18,25 +27,53 @@ import java.time.LocalDateTime;
 @Builder
 @NoArgsConstructor
 @Entity
+@Table(indexes = {
+        @Index(name = "message_channel_time_id_idx", columnList = "channelId, time, id"),
+        @Index(name = "message_channel_seq_idx", columnList = "channelId, seq", unique = true)
+})
 public class MessageEntity {
     /**
      * Message id
+     * Allocated in blocks from a dedicated sequence, so ids can be assigned in memory
      */
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_id")
+    @GenericGenerator(
+            name = "message_id",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "message_seq"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled-lo")
+            })
     private Integer id;
     /**
      * Id of a conversation channel this message has been sent to
      */
     private Integer channelId;
+    /**
+     * Sequence number of the message in its channel, assigned by the message store when the message is appended
+     * Numbers of a channel grow by one with every message, so a client can tell when it missed some.
+     */
+    private Long seq;
     /**
      * Message payload
      */
     private String payload;
     /**
-     * User that sent the message
+     * Id of the user that sent the message
+     */
+    @Column(name = "user_id")
+    private Integer userId;
+    /**
+     * Username of the user that sent the message
+     */
+    private String username;
+    /**
+     * User that sent the message, mapped read-only, authoring sets the user id
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
     private UserEntity user;
     /**
      * Time at which the message has been sent
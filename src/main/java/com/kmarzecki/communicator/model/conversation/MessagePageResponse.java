@@ -0,0 +1,28 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Response containing a page of the history of a channel
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class MessagePageResponse {
+    /**
+     * Channel the messages have been sent to
+     */
+    Integer channelId;
+    /**
+     * Messages, newest first
+     */
+    List<MessageResponse> messages;
+    /**
+     * Cursor of the next, older page, null if there are no older messages
+     */
+    String nextCursor;
+}
@@ -0,0 +1,28 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Response containing messages of a channel with sequence numbers in a requested range
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class MessageRangeResponse {
+    /**
+     * Channel the messages have been sent to
+     */
+    Integer channelId;
+    /**
+     * Messages, oldest first
+     */
+    List<MessageResponse> messages;
+    /**
+     * Whether the range held more messages than sent, the rest can be requested after the last sent message
+     */
+    boolean truncated;
+}
@@ -19,6 +19,10 @@ public class MessageResponse {
      * Channel this message has been sent to
      */
     Integer channelId;
+    /**
+     * Sequence number of the message in its channel
+     */
+    Long seq;
     /**
      * Message payload
      */
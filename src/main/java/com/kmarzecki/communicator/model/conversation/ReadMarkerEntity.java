@@ -0,0 +1,38 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+
+/**
+ * Entity representing the position up to which a user has read a conversation channel
+ */
+@Entity
+@IdClass(ReadMarkerId.class)
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class ReadMarkerEntity {
+    /**
+     * Username of the reader
+     */
+    @Id
+    private String username;
+    /**
+     * Id of the read conversation channel
+     */
+    @Id
+    private Integer channelId;
+    /**
+     * Id of the last message read by the user
+     */
+    private Integer lastReadMessageId;
+}
@@ -0,0 +1,18 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Key of a read marker, a user in a conversation channel
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadMarkerId implements Serializable {
+    private String username;
+    private Integer channelId;
+}
@@ -0,0 +1,34 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Response containing a batch of messages missed while disconnected
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class SyncResponse {
+    /**
+     * Missed messages, oldest first within each channel
+     */
+    List<MessageResponse> messages;
+    /**
+     * Flag indicating that this is the last batch of the synchronization
+     */
+    boolean last;
+    /**
+     * Channels with more missed messages than a single synchronization returns,
+     * set on the last batch; synchronize again to continue from the newest returned message
+     */
+    List<Integer> truncatedChannels;
+    /**
+     * Channels missing from the last seen ids of the request, for which only the latest page of messages is returned,
+     * set on the last batch; older messages are loaded as previous messages
+     */
+    List<Integer> resetChannels;
+}
@@ -0,0 +1,24 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Response listing users currently typing in a channel
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class TypingResponse {
+    /**
+     * Channel the users are typing in
+     */
+    Integer channelId;
+    /**
+     * Usernames of the typing users, sorted
+     */
+    List<String> usernames;
+}
@@ -0,0 +1,26 @@
+package com.kmarzecki.communicator.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Response with the read state of a channel, sent to all sessions of a user when the user reads the channel
+ */
+@Value
+@Builder
+@AllArgsConstructor
+public class UnreadResponse {
+    /**
+     * Read channel
+     */
+    Integer channelId;
+    /**
+     * Id of the last message read by the user
+     */
+    Integer lastReadMessageId;
+    /**
+     * Number of messages sent after the last read message
+     */
+    Integer unreadCount;
+}
@@ -27,4 +27,8 @@ public class FriendshipResponse {
      * Flag indicating that this friendship is one sided, and not yet confirmed
      */
     boolean pending;
+    /**
+     * Whether the other user of the friendship is online, set only when friends are listed
+     */
+    Boolean online;
 }
@@ -0,0 +1,22 @@
+package com.kmarzecki.communicator.model.friends;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Response notifying a user that a friend went online or offline
+ */
+@Value
+@AllArgsConstructor
+@Builder
+public class PresenceResponse {
+    /**
+     * Username of the friend
+     */
+    String username;
+    /**
+     * Whether the friend has an open websocket session
+     */
+    boolean online;
+}
@@ -0,0 +1,160 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * History of a single channel, kept as a list of segments ordered by their first message id
+ * Only the last segment is appended to, older segments are sealed.
+ * A closed log holds no open files, callers check {@link #isClosed()} under the log monitor and reopen it.
+ */
+class ChannelLog implements Closeable {
+    private final Path directory;
+    private final int channelId;
+    private final LogStoreProperties properties;
+    private final List<LogSegment> segments = new ArrayList<>();
+    private long lastSeq;
+    private boolean closed;
+    private volatile long lastAccess;
+
+    private ChannelLog(Path directory, int channelId, LogStoreProperties properties) {
+        this.directory = directory;
+        this.channelId = channelId;
+        this.properties = properties;
+    }
+
+    /**
+     * Recover the last segment of a channel log after a restart, where a crash may have left a torn record
+     * @return id of the last message in the log, 0 if the log is empty
+     */
+    static int recover(Path directory, int channelId, LogStoreProperties properties) throws IOException {
+        try (ChannelLog log = open(directory, channelId, properties, true)) {
+            return log.lastId();
+        }
+    }
+
+    /**
+     * Open the log of a channel, whose last segment has been recovered on startup
+     */
+    static ChannelLog open(Path directory, int channelId, LogStoreProperties properties) throws IOException {
+        return open(directory, channelId, properties, false);
+    }
+
+    private static ChannelLog open(Path directory, int channelId, LogStoreProperties properties, boolean recover)
+            throws IOException {
+        ChannelLog log = new ChannelLog(directory, channelId, properties);
+        Files.createDirectories(directory);
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(LogSegment::isSegment)
+                    .sorted(Comparator.comparingInt(LogSegment::baseIdOf))
+                    .collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            log.segments.add(LogSegment.open(path, channelId, properties.getIndexInterval()));
+        }
+        if (recover && !log.segments.isEmpty()) {
+            log.segments.get(log.segments.size() - 1).recover();
+        }
+        for (int i = log.segments.size() - 1; i >= 0 && log.lastSeq == 0; i--) {
+            log.lastSeq = log.segments.get(i).lastSeq();
+        }
+        log.touch();
+        return log;
+    }
+
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return id of the last message in the log, 0 if the log is empty
+     */
+    synchronized int lastId() throws IOException {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            int lastId = segments.get(i).lastId();
+            if (lastId > 0) {
+                return lastId;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Append a message, assigning it an id and the next sequence number while holding the channel lock
+     * so both follow the log order
+     */
+    synchronized MessageEntity append(MessageEntity message, IntSupplier idSupplier) throws IOException {
+        message.setId(idSupplier.getAsInt());
+        message.setSeq(lastSeq + 1);
+        LogSegment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || tail.size() >= properties.getSegmentSize()) {
+            tail = LogSegment.create(directory, message.getId(), channelId, properties.getIndexInterval());
+            segments.add(tail);
+        }
+        tail.append(message);
+        lastSeq = message.getSeq();
+        if (properties.isFsync()) {
+            tail.force();
+        }
+        return message;
+    }
+
+    synchronized List<MessageEntity> readBefore(MessageCursor cursor, int limit) throws IOException {
+        List<MessageEntity> result = new ArrayList<>(limit);
+        for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+            segments.get(i).readBefore(cursor, limit, result);
+        }
+        return result;
+    }
+
+    synchronized List<MessageEntity> readAfter(int messageId, int limit) throws IOException {
+        List<MessageEntity> result = new ArrayList<>(limit);
+        int first = 0;
+        while (first + 1 < segments.size() && segments.get(first + 1).baseId() <= messageId) {
+            first++;
+        }
+        for (int i = first; i < segments.size() && result.size() < limit; i++) {
+            segments.get(i).readAfter(messageId, limit, result);
+        }
+        return result;
+    }
+
+    synchronized List<MessageEntity> readRange(long fromSeq, long toSeq, int limit) throws IOException {
+        List<MessageEntity> result = new ArrayList<>();
+        for (int i = 0; i < segments.size() && result.size() < limit; i++) {
+            if (segments.get(i).readRange(fromSeq, toSeq, limit, result)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+}
@@ -1,8 +1,13 @@
 package com.kmarzecki.communicator.repository;
 
 import com.kmarzecki.communicator.model.conversation.ChannelEntity;
+import com.kmarzecki.communicator.model.conversation.ChannelMember;
+import com.kmarzecki.communicator.model.conversation.ChannelSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -11,11 +16,28 @@ import java.util.Set;
  */
 public interface ChannelRepository extends JpaRepository<ChannelEntity, Integer> {
     /**
-     * Find all channels containing a user with given username
+     * Find ids and names of all channels containing a user with given username, without loading members
      * @param username username of the user
-     * @return List of channels
+     * @return List of channel summaries
      */
-    List<ChannelEntity> findAllByUsers_Username(String username);
+    @Query("select c.id as id, c.name as name from ChannelEntity c join c.users u where u.username = :username")
+    List<ChannelSummary> findSummariesByUsername(@Param("username") String username);
+
+    /**
+     * Find usernames of members of many channels, without loading user entities
+     * @param ids ids of the channels
+     * @return List of memberships
+     */
+    @Query("select c.id as channelId, u.username as username from ChannelEntity c join c.users u where c.id in :ids")
+    List<ChannelMember> findMembersByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Find usernames of members of a channel, without loading user entities
+     * @param id id of the channel
+     * @return Set of usernames
+     */
+    @Query("select u.username from ChannelEntity c join c.users u where c.id = :id")
+    Set<String> findUsernamesById(@Param("id") Integer id);
 
     /**
      * Check if a channel with name and users with specified usernames exists
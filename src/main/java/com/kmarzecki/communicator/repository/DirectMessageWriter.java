@@ -0,0 +1,21 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Message writer saving every message synchronously
+ */
+@Component
+@AllArgsConstructor
+@ConditionalOnProperty(name = "communicator.messages.write-behind.enabled", havingValue = "false", matchIfMissing = true)
+class DirectMessageWriter implements MessageWriter {
+    private final MessageRepository messageRepository;
+
+    @Override
+    public MessageEntity write(MessageEntity message) {
+        return messageRepository.save(message);
+    }
+}
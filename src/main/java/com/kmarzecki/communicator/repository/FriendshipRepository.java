@@ -2,6 +2,8 @@ package com.kmarzecki.communicator.repository;
 
 import com.kmarzecki.communicator.model.friends.FriendshipEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -24,4 +26,13 @@ public interface FriendshipRepository extends JpaRepository<FriendshipEntity, In
      * @return if such friendship exists
      */
     boolean existsByRequesterEqualsAndTargetEquals(String requester, String target);
+
+    /**
+     * Find usernames of users with an accepted friendship with a user
+     * @param username username of the user
+     * @return List of friend usernames
+     */
+    @Query("select case when f.requester = :username then f.target else f.requester end from FriendshipEntity f"
+            + " where f.pending = false and (f.requester = :username or f.target = :username)")
+    List<String> findFriendUsernames(@Param("username") String username);
 }
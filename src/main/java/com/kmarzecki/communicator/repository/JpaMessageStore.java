@@ -0,0 +1,101 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Message store keeping messages as JPA entities
+ * Sequence numbers come from an in-memory counter per channel, restored from the highest stored number
+ * on the first append to the channel, so sending never waits on a database sequence.
+ * Callers publishing appended messages order appends and publication of a channel themselves.
+ * A message whose write fails leaves a gap in the numbers of its channel.
+ */
+@Component
+@AllArgsConstructor
+@ConditionalOnProperty(name = "communicator.messages.store", havingValue = "jpa", matchIfMissing = true)
+class JpaMessageStore implements MessageStore {
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "time", "id");
+    private static final Sort OLDEST_ID_FIRST = Sort.by(Sort.Direction.ASC, "id");
+    private static final Sort OLDEST_SEQ_FIRST = Sort.by(Sort.Direction.ASC, "seq");
+
+    private final MessageWriter messageWriter;
+    private final MessageRepository messageRepository;
+    private final Map<Integer, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+    @Override
+    public MessageEntity append(MessageEntity message) {
+        message.setSeq(sequence(message.getChannelId()).incrementAndGet());
+        return messageWriter.write(message);
+    }
+
+    @Override
+    public List<MessageEntity> findLatest(Integer channelId, int limit) {
+        return messageRepository.findAllByChannelId(channelId, PageRequest.of(0, limit, NEWEST_FIRST));
+    }
+
+    @Override
+    public List<MessageEntity> findBefore(Integer channelId, MessageCursor cursor, int limit) {
+        return messageRepository.findAllBefore(channelId, cursor.getTime(), cursor.getId(), PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<MessageEntity> findAfter(Integer channelId, Integer messageId, int limit) {
+        return messageRepository.findAllByChannelIdAndIdGreaterThan(
+                channelId,
+                messageId,
+                PageRequest.of(0, limit, OLDEST_ID_FIRST));
+    }
+
+    @Override
+    public int countAfter(Integer channelId, Integer messageId, String username, int limit) {
+        return (int) Math.min(limit, messageRepository.countByChannelIdAndIdGreaterThanAndUsernameNot(channelId, messageId, username));
+    }
+
+    @Override
+    public Map<Integer, Integer> countAfter(Map<Integer, Integer> messageIds, String username, int limit) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        messageRepository.countAfter(messageIds, username)
+                .forEach((channelId, count) -> counts.put(channelId, (int) Math.min(limit, count)));
+        return counts;
+    }
+
+    @Override
+    public Map<Integer, MessageEntity> findLastMessages(Collection<Integer> channelIds) {
+        if (channelIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return messageRepository.findLastByChannelIdIn(channelIds).stream()
+                .collect(Collectors.toMap(MessageEntity::getChannelId, Function.identity()));
+    }
+
+    @Override
+    public List<MessageEntity> findRange(Integer channelId, Long fromSeq, Long toSeq, int limit) {
+        return messageRepository.findAllByChannelIdAndSeqBetween(
+                channelId,
+                fromSeq,
+                toSeq,
+                PageRequest.of(0, limit, OLDEST_SEQ_FIRST));
+    }
+
+    private AtomicLong sequence(Integer channelId) {
+        return sequences.computeIfAbsent(channelId, id -> {
+            Long maxSeq = messageRepository.findMaxSeq(id);
+            return new AtomicLong(maxSeq == null ? 0 : maxSeq);
+        });
+    }
+}
@@ -0,0 +1,241 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Message store keeping the history of every channel in append-only segment files
+ * Segments are read through memory-mapped buffers, message ids are allocated from a counter
+ * restored from the logs on startup.
+ * Channel logs are opened on first use, the least recently used ones are closed once more than
+ * the configured number are open, down to nine tenths of it so the scan for idle logs is amortised.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "communicator.messages.store", havingValue = "log")
+class LogMessageStore implements MessageStore {
+    private static final Pattern CHANNEL_DIRECTORY = Pattern.compile("\\d+");
+    private static final double EVICTION_TARGET = 0.9;
+
+    private final LogStoreProperties properties;
+    private final Path directory;
+    private final Map<Integer, ChannelLog> logs = new ConcurrentHashMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    LogMessageStore(LogStoreProperties properties) {
+        this.properties = properties;
+        this.directory = Paths.get(properties.getDirectory());
+    }
+
+    /**
+     * Recover the log of every channel and restore the message id counter, the logs are closed until used
+     */
+    @PostConstruct
+    void load() throws IOException {
+        Files.createDirectories(directory);
+        int channelCount = 0;
+        try (Stream<Path> channels = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) channels.filter(Files::isDirectory)::iterator) {
+                Optional<Integer> channelIdOf = channelIdOf(path);
+                if (!channelIdOf.isPresent()) {
+                    log.warn("Skipping {}, not a channel log directory", path);
+                    continue;
+                }
+                lastId.accumulateAndGet(ChannelLog.recover(path, channelIdOf.get(), properties), Math::max);
+                channelCount++;
+            }
+        }
+        log.info("Recovered message logs of {} channels from {}, last message id {}", channelCount, directory, lastId.get());
+    }
+
+    /**
+     * @return id of the channel a log directory belongs to, empty if the directory name is not a channel id
+     */
+    private static Optional<Integer> channelIdOf(Path path) {
+        String name = path.getFileName().toString();
+        if (!CHANNEL_DIRECTORY.matcher(name).matches()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Integer.parseInt(name));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        for (ChannelLog channelLog : logs.values()) {
+            channelLog.close();
+        }
+    }
+
+    @Override
+    public MessageEntity append(MessageEntity message) {
+        return withLog(message.getChannelId(), channelLog -> channelLog.append(message, lastId::incrementAndGet));
+    }
+
+    @Override
+    public List<MessageEntity> findLatest(Integer channelId, int limit) {
+        return findBefore(channelId, new MessageCursor(LocalDateTime.MAX, Integer.MAX_VALUE), limit);
+    }
+
+    @Override
+    public List<MessageEntity> findBefore(Integer channelId, MessageCursor cursor, int limit) {
+        return withLog(channelId, channelLog -> channelLog.readBefore(cursor, limit));
+    }
+
+    @Override
+    public List<MessageEntity> findAfter(Integer channelId, Integer messageId, int limit) {
+        return withLog(channelId, channelLog -> channelLog.readAfter(messageId, limit));
+    }
+
+    @Override
+    public int countAfter(Integer channelId, Integer messageId, String username, int limit) {
+        int count = 0;
+        Integer after = messageId;
+        while (count < limit) {
+            List<MessageEntity> page = findAfter(channelId, after, limit);
+            for (MessageEntity message : page) {
+                if (!message.getUsername().equals(username)) {
+                    count++;
+                }
+            }
+            if (page.size() < limit) {
+                break;
+            }
+            after = page.get(page.size() - 1).getId();
+        }
+        return Math.min(count, limit);
+    }
+
+    @Override
+    public Map<Integer, Integer> countAfter(Map<Integer, Integer> messageIds, String username, int limit) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        messageIds.forEach((channelId, messageId) -> {
+            int count = countAfter(channelId, messageId, username, limit);
+            if (count > 0) {
+                counts.put(channelId, count);
+            }
+        });
+        return counts;
+    }
+
+    @Override
+    public Map<Integer, MessageEntity> findLastMessages(Collection<Integer> channelIds) {
+        Map<Integer, MessageEntity> messages = new HashMap<>();
+        for (Integer channelId : channelIds) {
+            List<MessageEntity> latest = findLatest(channelId, 1);
+            if (!latest.isEmpty()) {
+                messages.put(channelId, latest.get(0));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public List<MessageEntity> findRange(Integer channelId, Long fromSeq, Long toSeq, int limit) {
+        return withLog(channelId, channelLog -> channelLog.readRange(fromSeq, toSeq, limit));
+    }
+
+    /**
+     * @return number of channel logs currently open
+     */
+    int openChannelCount() {
+        return logs.size();
+    }
+
+    /**
+     * Run an operation on the open log of a channel, reopening it if it has been closed in the meantime
+     */
+    private <T> T withLog(Integer channelId, LogOperation<T> operation) {
+        try {
+            while (true) {
+                ChannelLog channelLog = log(channelId);
+                synchronized (channelLog) {
+                    if (!channelLog.isClosed()) {
+                        return operation.apply(channelLog);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ChannelLog log(Integer channelId) {
+        ChannelLog channelLog = logs.computeIfAbsent(channelId, id -> {
+            try {
+                return ChannelLog.open(directory.resolve(String.valueOf(id)), id, properties);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        channelLog.touch();
+        if (logs.size() > properties.getMaxOpenChannels()) {
+            closeIdleLogs();
+        }
+        return channelLog;
+    }
+
+    private void closeIdleLogs() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int target = Math.max(1, (int) (properties.getMaxOpenChannels() * EVICTION_TARGET));
+            List<Map.Entry<Integer, ChannelLog>> candidates = new ArrayList<>(logs.entrySet());
+            candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess()));
+            for (Map.Entry<Integer, ChannelLog> eldest : candidates) {
+                if (logs.size() <= target) {
+                    return;
+                }
+                if (logs.remove(eldest.getKey(), eldest.getValue())) {
+                    closeQuietly(eldest.getValue());
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static void closeQuietly(ChannelLog channelLog) {
+        try {
+            channelLog.close();
+        } catch (IOException e) {
+            log.warn("Failed to close an idle channel log", e);
+        }
+    }
+
+    /**
+     * Operation on an open channel log
+     */
+    private interface LogOperation<T> {
+        T apply(ChannelLog channelLog) throws IOException;
+    }
+}
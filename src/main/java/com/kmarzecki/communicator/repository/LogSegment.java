@@ -0,0 +1,373 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append-only file holding consecutive messages of a single channel
+ * Each record is a length and a CRC32 of the body, followed by the body.
+ * A sparse index keeps the id, the sequence number and the position of a record every index interval bytes.
+ * Records of version 1 have no sequence number and read as 0, they can only precede numbered records.
+ * Reads go through a mapping of the segment, remapped once the segment has doubled in size since it was mapped,
+ * records appended past the mapped region are read with positional reads.
+ * Not thread safe, access is guarded by the owning {@link ChannelLog}.
+ */
+@Slf4j
+class LogSegment implements Closeable {
+    static final String SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final byte VERSION = 2;
+    private static final byte FIRST_NUMBERED_VERSION = 2;
+    private static final int VERSION_BYTES = 1;
+    /**
+     * User id written for messages of users whose id is unknown, generated ids start at 1
+     */
+    private static final int UNKNOWN_USER_ID = 0;
+
+    private final Path path;
+    private final int baseId;
+    private final int channelId;
+    private final int indexInterval;
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long size;
+    private int lastId;
+    private long lastSeq;
+    private boolean indexed;
+    private int[] indexIds = new int[16];
+    private long[] indexSeqs = new long[16];
+    private long[] indexPositions = new long[16];
+    private int indexSize;
+
+    private LogSegment(Path path, int baseId, int channelId, int indexInterval) throws IOException {
+        this.path = path;
+        this.baseId = baseId;
+        this.channelId = channelId;
+        this.indexInterval = indexInterval;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Create an empty segment starting with a message id
+     */
+    static LogSegment create(Path directory, int baseId, int channelId, int indexInterval) throws IOException {
+        LogSegment segment = new LogSegment(directory.resolve(fileName(baseId)), baseId, channelId, indexInterval);
+        segment.indexed = true;
+        return segment;
+    }
+
+    /**
+     * Open an existing segment, its index is built on first read
+     */
+    static LogSegment open(Path path, int channelId, int indexInterval) throws IOException {
+        return new LogSegment(path, baseIdOf(path), channelId, indexInterval);
+    }
+
+    static boolean isSegment(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    static int baseIdOf(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(int baseId) {
+        return String.format("%010d%s", baseId, SUFFIX);
+    }
+
+    int baseId() {
+        return baseId;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int lastId() throws IOException {
+        ensureIndexed();
+        return lastId;
+    }
+
+    /**
+     * @return sequence number of the last message in the segment, 0 if it holds no numbered messages
+     */
+    long lastSeq() throws IOException {
+        ensureIndexed();
+        return lastSeq;
+    }
+
+    /**
+     * Scan the segment, rebuilding its index and truncating it after the last complete record
+     * Used on the tail segment after a restart, where a crash may have left a torn record.
+     */
+    void recover() throws IOException {
+        long fileSize = channel.size();
+        long validSize = scan(fileSize);
+        if (validSize < fileSize) {
+            log.warn("Truncating {} from {} to {} bytes after an incomplete record", path, fileSize, validSize);
+            mapped = null;
+            channel.truncate(validSize);
+        }
+    }
+
+    void append(MessageEntity message) throws IOException {
+        ByteBuffer record = encode(message);
+        long position = size;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        index(message.getId(), message.getSeq(), size);
+        lastId = message.getId();
+        lastSeq = message.getSeq();
+        size = position;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Add messages preceding a cursor to a list, newest first
+     */
+    void readBefore(MessageCursor cursor, int limit, List<MessageEntity> into) throws IOException {
+        ensureIndexed();
+        if (indexSize == 0 || baseId >= cursor.getId()) {
+            return;
+        }
+        int slot = Math.max(0, lastSlotBelow(cursor.getId()));
+        for (int block = slot; block >= 0 && into.size() < limit; block--) {
+            ByteBuffer records = block(block);
+            List<MessageEntity> found = new ArrayList<>();
+            for (int position = 0; position < records.limit(); position += recordLength(records, position)) {
+                MessageEntity message = decode(records, position);
+                if (cursor.isAfter(message.getTime(), message.getId())) {
+                    found.add(message);
+                }
+            }
+            for (int i = found.size() - 1; i >= 0 && into.size() < limit; i--) {
+                into.add(found.get(i));
+            }
+        }
+    }
+
+    /**
+     * Add messages with ids greater than a specified id to a list, oldest first
+     */
+    void readAfter(int messageId, int limit, List<MessageEntity> into) throws IOException {
+        ensureIndexed();
+        if (indexSize == 0 || lastId <= messageId) {
+            return;
+        }
+        for (int block = Math.max(0, lastSlotBelow(messageId + 1)); block < indexSize && into.size() < limit; block++) {
+            ByteBuffer records = block(block);
+            for (int position = 0; position < records.limit() && into.size() < limit; position += recordLength(records, position)) {
+                if (idAt(records, position) > messageId) {
+                    into.add(decode(records, position));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add messages with sequence numbers in a range to a list, oldest first
+     * @return true if the segment holds messages past the range
+     */
+    boolean readRange(long fromSeq, long toSeq, int limit, List<MessageEntity> into) throws IOException {
+        ensureIndexed();
+        if (indexSize == 0 || lastSeq < fromSeq) {
+            return false;
+        }
+        for (int block = Math.max(0, lastSlotWithSeqBelow(fromSeq)); block < indexSize && into.size() < limit; block++) {
+            ByteBuffer records = block(block);
+            for (int position = 0; position < records.limit() && into.size() < limit; position += recordLength(records, position)) {
+                long seq = seqAt(records, position);
+                if (seq > toSeq) {
+                    return true;
+                }
+                if (seq >= fromSeq) {
+                    into.add(decode(records, position));
+                }
+            }
+        }
+        return lastSeq > toSeq;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void ensureIndexed() throws IOException {
+        if (!indexed) {
+            scan(channel.size());
+        }
+    }
+
+    private long scan(long fileSize) throws IOException {
+        indexSize = 0;
+        lastId = 0;
+        lastSeq = 0;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        long position = 0;
+        while (position + HEADER_BYTES <= fileSize) {
+            int length = buffer.getInt((int) position);
+            if (length <= VERSION_BYTES || position + HEADER_BYTES + length > fileSize
+                    || checksum(buffer, position + HEADER_BYTES, length) != buffer.getInt((int) position + 4)) {
+                break;
+            }
+            int id = idAt(buffer, position);
+            long seq = seqAt(buffer, position);
+            index(id, seq, position);
+            lastId = id;
+            lastSeq = seq;
+            position += HEADER_BYTES + length;
+        }
+        size = position;
+        mapped = buffer;
+        indexed = true;
+        return position;
+    }
+
+    /**
+     * @return records between an index slot and the next one, at positions relative to the slot
+     */
+    private ByteBuffer block(int slot) throws IOException {
+        long from = indexPositions[slot];
+        long to = slot + 1 < indexSize ? indexPositions[slot + 1] : size;
+        if (mapped == null || to > mapped.capacity() && size >= 2L * mapped.capacity()) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (to <= mapped.capacity()) {
+            ByteBuffer records = mapped.duplicate();
+            records.limit((int) to).position((int) from);
+            return records.slice();
+        }
+        ByteBuffer records = ByteBuffer.allocate((int) (to - from));
+        while (records.hasRemaining()) {
+            if (channel.read(records, from + records.position()) < 0) {
+                throw new EOFException("Unexpected end of " + path + " at " + (from + records.position()));
+            }
+        }
+        records.flip();
+        return records;
+    }
+
+    private void index(int id, long seq, long position) {
+        if (indexSize > 0 && position - indexPositions[indexSize - 1] < indexInterval) {
+            return;
+        }
+        if (indexSize == indexIds.length) {
+            indexIds = Arrays.copyOf(indexIds, indexSize * 2);
+            indexSeqs = Arrays.copyOf(indexSeqs, indexSize * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+        }
+        indexIds[indexSize] = id;
+        indexSeqs[indexSize] = seq;
+        indexPositions[indexSize] = position;
+        indexSize++;
+    }
+
+    /**
+     * @return the last index slot with an id lower than the specified id, -1 if there is none
+     */
+    private int lastSlotBelow(int id) {
+        int slot = Arrays.binarySearch(indexIds, 0, indexSize, id);
+        return slot >= 0 ? slot - 1 : -slot - 2;
+    }
+
+    /**
+     * @return the last index slot with a sequence number lower than the specified one, -1 if there is none
+     */
+    private int lastSlotWithSeqBelow(long seq) {
+        int slot = Arrays.binarySearch(indexSeqs, 0, indexSize, seq);
+        return slot >= 0 ? slot - 1 : -slot - 2;
+    }
+
+    private ByteBuffer encode(MessageEntity message) {
+        byte[] username = message.getUsername().getBytes(UTF_8);
+        byte[] payload = message.getPayload().getBytes(UTF_8);
+        int length = VERSION_BYTES + 4 + 8 + 4 + 8 + 4 + 4 + username.length + 4 + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+        record.putInt(length)
+                .putInt(0)
+                .put(VERSION)
+                .putInt(message.getId())
+                .putLong(message.getSeq())
+                .putInt(message.getUserId() != null ? message.getUserId() : UNKNOWN_USER_ID)
+                .putLong(message.getTime().toEpochSecond(ZoneOffset.UTC))
+                .putInt(message.getTime().getNano())
+                .putInt(username.length)
+                .put(username)
+                .putInt(payload.length)
+                .put(payload);
+        record.putInt(4, checksum(record, HEADER_BYTES, length));
+        record.flip();
+        return record;
+    }
+
+    private MessageEntity decode(ByteBuffer buffer, long position) {
+        ByteBuffer record = buffer.duplicate();
+        record.position((int) position + HEADER_BYTES);
+        byte version = record.get();
+        int id = record.getInt();
+        Long seq = version >= FIRST_NUMBERED_VERSION ? record.getLong() : null;
+        int userId = record.getInt();
+        LocalDateTime time = LocalDateTime.ofEpochSecond(record.getLong(), record.getInt(), ZoneOffset.UTC);
+        byte[] username = new byte[record.getInt()];
+        record.get(username);
+        byte[] payload = new byte[record.getInt()];
+        record.get(payload);
+        return MessageEntity.builder()
+                .id(id)
+                .channelId(channelId)
+                .seq(seq)
+                .userId(userId != UNKNOWN_USER_ID ? userId : null)
+                .username(new String(username, UTF_8))
+                .payload(new String(payload, UTF_8))
+                .time(time)
+                .build();
+    }
+
+    private static int idAt(ByteBuffer buffer, long position) {
+        return buffer.getInt((int) position + HEADER_BYTES + VERSION_BYTES);
+    }
+
+    /**
+     * @return sequence number of a record, 0 for records written before messages were numbered
+     */
+    private static long seqAt(ByteBuffer buffer, long position) {
+        int offset = (int) position + HEADER_BYTES;
+        return buffer.get(offset) >= FIRST_NUMBERED_VERSION ? buffer.getLong(offset + VERSION_BYTES + 4) : 0;
+    }
+
+    private static int recordLength(ByteBuffer buffer, long position) {
+        return HEADER_BYTES + buffer.getInt((int) position);
+    }
+
+    private static int checksum(ByteBuffer buffer, long offset, int length) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit((int) offset + length).position((int) offset);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,36 @@
+package com.kmarzecki.communicator.repository;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration of the append-only log message store
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.messages.log")
+@Getter
+@Setter
+public class LogStoreProperties {
+    /**
+     * Directory containing a subdirectory of segment files per channel
+     */
+    private String directory = "data/messages";
+    /**
+     * Size in bytes after which a new segment is started
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+    /**
+     * Distance in bytes between entries of the sparse segment index
+     */
+    private int indexInterval = 4096;
+    /**
+     * Whether every append is forced to the storage device
+     */
+    private boolean fsync = false;
+    /**
+     * Maximum number of channel logs kept open, the least recently used ones are closed past it
+     */
+    private int maxOpenChannels = 1024;
+}
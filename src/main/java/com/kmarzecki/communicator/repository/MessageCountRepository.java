@@ -0,0 +1,16 @@
+package com.kmarzecki.communicator.repository;
+
+import java.util.Map;
+
+/**
+ * Message counts of many channels in a single query
+ */
+public interface MessageCountRepository {
+    /**
+     * Count messages with ids greater than a message id of their channel, written by users other than a specified one
+     * @param messageIds map of channel ids to message ids after which messages are counted
+     * @param username username of the user whose messages are not counted
+     * @return map of channel ids to numbers of messages, channels without such messages are left out
+     */
+    Map<Integer, Long> countAfter(Map<Integer, Integer> messageIds, String username);
+}
@@ -0,0 +1,46 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Message counts grouped by channel, with a condition on the message id per channel
+ */
+class MessageCountRepositoryImpl implements MessageCountRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Map<Integer, Long> countAfter(Map<Integer, Integer> messageIds, String username) {
+        Map<Integer, Long> counts = new HashMap<>();
+        if (messageIds.isEmpty()) {
+            return counts;
+        }
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<MessageEntity> message = query.from(MessageEntity.class);
+        Path<Integer> channelId = message.get("channelId");
+        Predicate[] after = messageIds.entrySet().stream()
+                .map(entry -> builder.and(
+                        builder.equal(channelId, entry.getKey()),
+                        builder.greaterThan(message.get("id"), entry.getValue())))
+                .toArray(Predicate[]::new);
+        query.multiselect(channelId, builder.count(message))
+                .where(builder.or(after), builder.notEqual(message.get("username"), username))
+                .groupBy(channelId);
+        for (Tuple row : entityManager.createQuery(query).getResultList()) {
+            counts.put(row.get(0, Integer.class), row.get(1, Long.class));
+        }
+        return counts;
+    }
+}
@@ -3,14 +3,17 @@ package com.kmarzecki.communicator.repository;
 import com.kmarzecki.communicator.model.conversation.MessageEntity;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Message repository
  */
-public interface MessageRepository extends JpaRepository<MessageEntity, Integer> {
+public interface MessageRepository extends JpaRepository<MessageEntity, Integer>, MessageCountRepository {
     /**
      * Find paginated messages in a channel
      * @param channelId id of the channel
@@ -20,11 +23,64 @@ public interface MessageRepository extends JpaRepository<MessageEntity, Integer>
     List<MessageEntity> findAllByChannelId(Integer channelId, Pageable pageable);
 
     /**
-     * Find paginated messages in a channel sent before a specified time
+     * Find paginated messages in a channel with ids greater than a specified id
      * @param channelId id of the channel
-     * @param time time before they are sent
+     * @param id message id after which messages are returned
      * @param pageable pagination information
      * @return list of messages
      */
-    List<MessageEntity> findAllByChannelIdAndTimeBefore(Integer channelId, LocalDateTime time, Pageable pageable);
+    List<MessageEntity> findAllByChannelIdAndIdGreaterThan(Integer channelId, Integer id, Pageable pageable);
+
+    /**
+     * Count messages in a channel with ids greater than a specified id, written by users other than a specified one
+     * @param channelId id of the channel
+     * @param id message id after which messages are counted
+     * @param username username of the user whose messages are not counted
+     * @return number of messages
+     */
+    long countByChannelIdAndIdGreaterThanAndUsernameNot(Integer channelId, Integer id, String username);
+
+    /**
+     * Find paginated messages in a channel with sequence numbers in a range
+     * @param channelId id of the channel
+     * @param fromSeq first sequence number, inclusive
+     * @param toSeq last sequence number, inclusive
+     * @param pageable pagination information
+     * @return list of messages
+     */
+    List<MessageEntity> findAllByChannelIdAndSeqBetween(Integer channelId, Long fromSeq, Long toSeq, Pageable pageable);
+
+    /**
+     * Find the highest sequence number in a channel
+     * @param channelId id of the channel
+     * @return the sequence number, null if the channel has no numbered messages
+     */
+    @Query("select max(m.seq) from MessageEntity m where m.channelId = :channelId")
+    Long findMaxSeq(@Param("channelId") Integer channelId);
+
+    /**
+     * Find the message with the greatest id in each of many channels
+     * @param channelIds ids of the channels
+     * @return list of messages, one per channel with messages
+     */
+    @Query("select m from MessageEntity m where m.id in"
+            + " (select max(l.id) from MessageEntity l where l.channelId in :channelIds group by l.channelId)")
+    List<MessageEntity> findLastByChannelIdIn(@Param("channelIds") Collection<Integer> channelIds);
+
+    /**
+     * Find messages in a channel preceding a position in (time, id) order, newest first
+     * @param channelId id of the channel
+     * @param time time of the position
+     * @param id message id of the position
+     * @param pageable pagination information
+     * @return list of messages
+     */
+    @Query("select m from MessageEntity m where m.channelId = :channelId"
+            + " and (m.time < :time or (m.time = :time and m.id < :id))"
+            + " order by m.time desc, m.id desc")
+    List<MessageEntity> findAllBefore(
+            @Param("channelId") Integer channelId,
+            @Param("time") LocalDateTime time,
+            @Param("id") Integer id,
+            Pageable pageable);
 }
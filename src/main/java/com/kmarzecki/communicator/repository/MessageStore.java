@@ -0,0 +1,82 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of the message history of conversation channels
+ */
+public interface MessageStore {
+    /**
+     * Append a message to the history of its channel
+     * @param message message to store
+     * @return the message with an id and the next sequence number of its channel assigned
+     */
+    MessageEntity append(MessageEntity message);
+
+    /**
+     * Find the latest messages in a channel
+     * @param channelId id of the channel
+     * @param limit maximum number of messages
+     * @return list of messages, newest first
+     */
+    List<MessageEntity> findLatest(Integer channelId, int limit);
+
+    /**
+     * Find messages in a channel preceding a cursor
+     * @param channelId id of the channel
+     * @param cursor position before which messages are returned
+     * @param limit maximum number of messages
+     * @return list of messages, newest first
+     */
+    List<MessageEntity> findBefore(Integer channelId, MessageCursor cursor, int limit);
+
+    /**
+     * Find messages in a channel with ids greater than a specified id
+     * @param channelId id of the channel
+     * @param messageId message id after which messages are returned
+     * @param limit maximum number of messages
+     * @return list of messages, oldest first
+     */
+    List<MessageEntity> findAfter(Integer channelId, Integer messageId, int limit);
+
+    /**
+     * Count messages in a channel with ids greater than a specified id, written by users other than a specified one
+     * @param channelId id of the channel
+     * @param messageId message id after which messages are counted
+     * @param username username of the user whose messages are not counted
+     * @param limit maximum number of counted messages
+     * @return number of messages, at most limit
+     */
+    int countAfter(Integer channelId, Integer messageId, String username, int limit);
+
+    /**
+     * Count messages in many channels at once, like {@link #countAfter(Integer, Integer, String, int)}
+     * @param messageIds map of channel ids to message ids after which messages are counted
+     * @param username username of the user whose messages are not counted
+     * @param limit maximum number of counted messages per channel
+     * @return map of channel ids to numbers of messages, each at most limit, channels without such messages are left out
+     */
+    Map<Integer, Integer> countAfter(Map<Integer, Integer> messageIds, String username, int limit);
+
+    /**
+     * Find the last message of each of many channels
+     * @param channelIds ids of the channels
+     * @return map of channel ids to their message with the greatest id, channels without messages are left out
+     */
+    Map<Integer, MessageEntity> findLastMessages(Collection<Integer> channelIds);
+
+    /**
+     * Find messages in a channel with sequence numbers in a range
+     * @param channelId id of the channel
+     * @param fromSeq first sequence number, inclusive
+     * @param toSeq last sequence number, inclusive
+     * @param limit maximum number of messages
+     * @return list of messages, oldest first
+     */
+    List<MessageEntity> findRange(Integer channelId, Long fromSeq, Long toSeq, int limit);
+}
@@ -0,0 +1,15 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+
+/**
+ * Writer persisting sent messages
+ */
+public interface MessageWriter {
+    /**
+     * Persist a message
+     * @param message message to persist
+     * @return the message with an id assigned
+     */
+    MessageEntity write(MessageEntity message);
+}
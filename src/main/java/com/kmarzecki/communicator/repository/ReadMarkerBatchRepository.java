@@ -0,0 +1,16 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.ReadMarkerEntity;
+
+import java.util.Collection;
+
+/**
+ * Batch writes of read markers, bypassing the persistence context
+ */
+public interface ReadMarkerBatchRepository {
+    /**
+     * Insert or update read markers in a single JDBC batch
+     * @param markers read markers to write
+     */
+    void upsertAll(Collection<ReadMarkerEntity> markers);
+}
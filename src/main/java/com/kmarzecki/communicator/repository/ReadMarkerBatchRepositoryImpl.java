@@ -0,0 +1,28 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.ReadMarkerEntity;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+
+/**
+ * Read marker writes merging every marker into its row in one statement,
+ * instead of a select per marker done by merging entities through JPA
+ */
+@AllArgsConstructor
+class ReadMarkerBatchRepositoryImpl implements ReadMarkerBatchRepository {
+    private static final String UPSERT_MARKER =
+            "merge into read_marker_entity (username, channel_id, last_read_message_id) key (username, channel_id) values (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void upsertAll(Collection<ReadMarkerEntity> markers) {
+        jdbcTemplate.batchUpdate(UPSERT_MARKER, markers, markers.size(), (statement, marker) -> {
+            statement.setString(1, marker.getUsername());
+            statement.setInt(2, marker.getChannelId());
+            statement.setInt(3, marker.getLastReadMessageId());
+        });
+    }
+}
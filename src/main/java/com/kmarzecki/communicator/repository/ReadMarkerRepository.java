@@ -0,0 +1,19 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.ReadMarkerEntity;
+import com.kmarzecki.communicator.model.conversation.ReadMarkerId;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+/**
+ * Read marker repository
+ */
+public interface ReadMarkerRepository extends JpaRepository<ReadMarkerEntity, ReadMarkerId>, ReadMarkerBatchRepository {
+    /**
+     * Find read markers of a user in all channels
+     * @param username username of the user
+     * @return list of read markers
+     */
+    List<ReadMarkerEntity> findAllByUsername(String username);
+}
@@ -3,10 +3,10 @@ package com.kmarzecki.communicator.repository;
 import lombok.AllArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
-import javax.sql.DataSource;
+import javax.persistence.EntityManagerFactory;
 
 /**
  * Repository configuration
@@ -15,13 +15,15 @@ import javax.sql.DataSource;
 @AllArgsConstructor
 @EnableTransactionManagement
 public class RepositoryConfiguration {
-    private final DataSource dataSource;
+    private final EntityManagerFactory entityManagerFactory;
 
     /**
+     * Transaction manager flushing JPA changes on commit, so that inserts are sent in JDBC batches.
+     * It exposes its connection to plain JDBC access as well.
      * @return TransactionManager bean
      */
     @Bean
-    public DataSourceTransactionManager transactionManager() {
-        return new DataSourceTransactionManager(dataSource);
+    public JpaTransactionManager transactionManager() {
+        return new JpaTransactionManager(entityManagerFactory);
     }
 }
@@ -2,6 +2,8 @@ package com.kmarzecki.communicator.repository;
 
 import com.kmarzecki.communicator.model.auth.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Set;
@@ -25,6 +27,14 @@ public interface UserRepository extends JpaRepository<UserEntity, Integer> {
      */
     UserEntity findByUsername(String username);
 
+    /**
+     * Find id of a user by username, without loading the user
+     * @param username user username
+     * @return user id
+     */
+    @Query("select u.id from UserEntity u where u.username = :username")
+    Integer findIdByUsername(@Param("username") String username);
+
     /**
      * Find all users with usernames
      * @param usernames usernames
@@ -0,0 +1,267 @@
+package com.kmarzecki.communicator.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Message writer assigning ids in memory and inserting messages in JDBC batches on a background thread
+ * Messages are flushed when a batch is full or the flush interval has passed since the first queued message.
+ * When the queue stays full for longer than the offer timeout the sender writes its message itself.
+ * A batch failing every attempt is retried row by row, only the failing rows go to the dead letter file.
+ * Ids are taken from blocks generated from the entity sequence, one block per round trip.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "communicator.messages.write-behind.enabled", havingValue = "true")
+class WriteBehindMessageWriter implements MessageWriter {
+    private static final String INSERT_MESSAGE =
+            "insert into message_entity (id, channel_id, seq, payload, time, user_id, username) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final int FLUSH_ATTEMPTS = 3;
+
+    private final WriteBehindProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SessionFactoryImplementor sessionFactory;
+    private final IdentifierGenerator idGenerator;
+    private final int[] idBlock;
+    private int idBlockPosition;
+    private final BlockingQueue<MessageEntity> queue;
+    private final Thread writerThread;
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+    private final ObjectMapper objectMapper;
+    private final Path deadLetterFile;
+    private final Counter deadLetters;
+
+    WriteBehindMessageWriter(WriteBehindProperties properties,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             EntityManagerFactory entityManagerFactory,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.idGenerator = sessionFactory.getMetamodel().entityPersister(MessageEntity.class).getIdentifierGenerator();
+        this.idBlock = new int[idBlockSize(idGenerator)];
+        this.idBlockPosition = idBlock.length;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.writerThread = new Thread(this::run, "message-write-behind");
+        this.objectMapper = objectMapper;
+        this.deadLetterFile = Paths.get(properties.getDeadLetterFile());
+        this.deadLetters = meterRegistry.counter("communicator.messages.dead_letter");
+    }
+
+    @PostConstruct
+    void start() {
+        writerThread.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        writerThread.join(properties.getDrainTimeout().toMillis());
+        List<MessageEntity> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    @Override
+    public MessageEntity write(MessageEntity message) {
+        message.setId(nextId(message));
+        boolean queued;
+        runningLock.readLock().lock();
+        try {
+            queued = running && offer(message);
+        } finally {
+            runningLock.readLock().unlock();
+        }
+        if (!queued) {
+            flush(singletonList(message));
+        }
+        return message;
+    }
+
+    private boolean offer(MessageEntity message) {
+        try {
+            if (queue.offer(message, properties.getOfferTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            log.warn("Write-behind queue full, writing message {} synchronously", message.getId());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Integer nextId(MessageEntity message) {
+        synchronized (idBlock) {
+            if (idBlockPosition == idBlock.length) {
+                try (StatelessSession session = sessionFactory.openStatelessSession()) {
+                    for (int i = 0; i < idBlock.length; i++) {
+                        idBlock[i] = (Integer) idGenerator.generate((SharedSessionContractImplementor) session, message);
+                    }
+                }
+                idBlockPosition = 0;
+            }
+            return idBlock[idBlockPosition++];
+        }
+    }
+
+    /**
+     * @return number of ids the generator allocates per database round trip
+     */
+    private static int idBlockSize(IdentifierGenerator idGenerator) {
+        if (idGenerator instanceof SequenceStyleGenerator) {
+            return Math.max(1, ((SequenceStyleGenerator) idGenerator).getOptimizer().getIncrementSize());
+        }
+        return 1;
+    }
+
+    private void run() {
+        List<MessageEntity> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<MessageEntity> batch) throws InterruptedException {
+        long flushInterval = properties.getFlushInterval().toNanos();
+        MessageEntity first = queue.poll(flushInterval, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushInterval;
+        while (batch.size() < properties.getBatchSize()) {
+            queue.drainTo(batch, properties.getBatchSize() - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= properties.getBatchSize() || remaining <= 0) {
+                return;
+            }
+            MessageEntity next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<MessageEntity> batch) {
+        for (int attempt = 1; attempt <= FLUSH_ATTEMPTS; attempt++) {
+            try {
+                transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                        INSERT_MESSAGE,
+                        batch,
+                        batch.size(),
+                        WriteBehindMessageWriter::bind));
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Failed to write a batch of {} messages, attempt {}", batch.size(), attempt, e);
+            }
+        }
+        if (batch.size() > 1) {
+            log.warn("Writing a batch of {} messages starting with id {} row by row", batch.size(), batch.get(0).getId());
+        }
+        for (MessageEntity message : batch) {
+            try {
+                transactionTemplate.execute(status -> jdbcTemplate.update(INSERT_MESSAGE, ps -> bind(ps, message)));
+            } catch (RuntimeException e) {
+                log.error("Failed to write message {}, moving it to {}", message.getId(), deadLetterFile, e);
+                deadLetter(message);
+            }
+        }
+    }
+
+    private synchronized void deadLetter(MessageEntity message) {
+        deadLetters.increment();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", message.getId());
+        fields.put("channelId", message.getChannelId());
+        fields.put("seq", message.getSeq());
+        fields.put("userId", message.getUserId());
+        fields.put("username", message.getUsername());
+        fields.put("time", String.valueOf(message.getTime()));
+        fields.put("payload", message.getPayload());
+        try {
+            Path directory = deadLetterFile.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            Files.write(
+                    deadLetterFile,
+                    (objectMapper.writeValueAsString(fields) + "\n").getBytes(UTF_8),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Lost message {}: {}", message.getId(), fields, e);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, MessageEntity message) throws SQLException {
+        ps.setInt(1, message.getId());
+        ps.setObject(2, message.getChannelId(), Types.INTEGER);
+        ps.setObject(3, message.getSeq(), Types.BIGINT);
+        ps.setString(4, message.getPayload());
+        ps.setTimestamp(5, message.getTime() == null ? null : Timestamp.valueOf(message.getTime()));
+        ps.setObject(6, message.getUserId(), Types.INTEGER);
+        ps.setString(7, message.getUsername());
+    }
+}
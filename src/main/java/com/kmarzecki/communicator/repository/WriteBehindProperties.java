@@ -0,0 +1,46 @@
+package com.kmarzecki.communicator.repository;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the write-behind message writer
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.messages.write-behind")
+@Getter
+@Setter
+public class WriteBehindProperties {
+    /**
+     * Whether messages are persisted in batches by a background writer
+     */
+    private boolean enabled = false;
+    /**
+     * Maximum number of messages inserted in a single JDBC batch
+     */
+    private int batchSize = 500;
+    /**
+     * Maximum time a message waits in the queue before its batch is flushed
+     */
+    private Duration flushInterval = Duration.ofMillis(50);
+    /**
+     * Maximum number of messages waiting to be written
+     */
+    private int queueCapacity = 10000;
+    /**
+     * Time a sender waits for space in a full queue before writing its message synchronously
+     */
+    private Duration offerTimeout = Duration.ofMillis(100);
+    /**
+     * Maximum time spent writing queued messages on shutdown
+     */
+    private Duration drainTimeout = Duration.ofSeconds(30);
+    /**
+     * File to which messages that could not be inserted are appended as JSON lines, so they can be replayed
+     */
+    private String deadLetterFile = "data/messages-dead-letter.jsonl";
+}
@@ -7,6 +7,7 @@ import com.kmarzecki.communicator.model.auth.RegisterDto;
 import com.kmarzecki.communicator.model.auth.UserResponse;
 
 import java.security.Principal;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Authentication service
@@ -15,16 +16,25 @@ public interface AuthenticationService {
     /**
      * Login user
      * @param dto dto containing login information
+     * @return future completed with the logged user response, once the password is verified
+     */
+    CompletableFuture<LoginResponse> login(LoginDto dto);
+
+    /**
+     * Exchange a refresh token for new access and refresh tokens, without verifying the password
+     * Roles are reloaded from the user, a refresh token can be exchanged once.
+     * @param refreshToken refresh token received at login or at a previous refresh
      * @return logged user response
      */
-    LoginResponse login(LoginDto dto);
+    LoginResponse refresh(String refreshToken);
 
     /**
      * Register user
      * @param registerDto dto containing registration information
      * @param language user language
+     * @return future completed once the user is saved
      */
-    void register(RegisterDto registerDto, Language language);
+    CompletableFuture<Void> register(RegisterDto registerDto, Language language);
 
     /**
      * Get user information
@@ -6,44 +6,66 @@ import com.kmarzecki.communicator.model.auth.LoginDto;
 import com.kmarzecki.communicator.model.auth.LoginResponse;
 import com.kmarzecki.communicator.model.auth.RegisterDto;
 import com.kmarzecki.communicator.model.auth.UserResponse;
-import com.kmarzecki.communicator.repository.UserRepository;
 import lombok.AllArgsConstructor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import java.security.Principal;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 import static com.kmarzecki.communicator.util.InternationalizationUtil.userExists;
 
 @Service
 @AllArgsConstructor
 public class AuthenticationServiceImpl implements AuthenticationService {
-    private final UserRepository userRepository;
     private final JwtTokenService jwtTokenService;
     private final AuthenticationManager authenticationManager;
     private final UserDetailsServiceImpl userService;
+    private final PasswordHashingExecutor hashingExecutor;
 
     @Override
-    public LoginResponse login(LoginDto dto) {
+    public CompletableFuture<LoginResponse> login(LoginDto dto) {
         String username = dto.getUsername();
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(username, dto.getPassword())
-        );
-        String token = jwtTokenService.createToken(username, userRepository.findByUsername(username).getRoles());
-        return new LoginResponse(username, token);
+        return hashingExecutor.submit(() -> {
+            Authentication authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(username, dto.getPassword())
+            );
+            return createLoginResponse(username, authentication.getAuthorities());
+        });
     }
 
     @Override
-    public void register(RegisterDto dto, Language language) {
+    public LoginResponse refresh(String refreshToken) {
+        String username = jwtTokenService.getRefreshAuthentication(refreshToken).getName();
+        UserDetails user = userService.loadUserByUsername(username);
+        return createLoginResponse(username, user.getAuthorities());
+    }
+
+    @Override
+    public CompletableFuture<Void> register(RegisterDto dto, Language language) {
         if (userService.existsByUsername(dto.getUsername())) {
                 throw new OperationNotPermittedException(userExists(dto.getUsername(), language));
         }
-        userService.saveUser(dto);
+        return hashingExecutor.submit(() -> {
+            userService.saveUser(dto);
+            return null;
+        });
     }
 
     @Override
     public UserResponse getMe(Principal principal) {
         return new UserResponse(principal.getName());
     }
+
+    private LoginResponse createLoginResponse(String username, Collection<? extends GrantedAuthority> authorities) {
+        return new LoginResponse(
+                username,
+                jwtTokenService.createToken(username, authorities),
+                jwtTokenService.createRefreshToken(username, authorities));
+    }
 }
@@ -0,0 +1,18 @@
+package com.kmarzecki.communicator.security;
+
+/**
+ * Admission control for websocket handshakes
+ */
+public interface ConnectionAdmission {
+    /**
+     * Admit a handshake, which must be followed by {@link #release()} once it is handled
+     * @throws com.kmarzecki.communicator.exception.ServiceOverloadedException if the connection rate
+     * or the number of concurrent handshakes is exceeded
+     */
+    void acquire();
+
+    /**
+     * Mark an admitted handshake as handled
+     */
+    void release();
+}
@@ -0,0 +1,73 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection admission limiting the handshake rate with a token bucket and their concurrency with a semaphore
+ */
+@Component
+class ConnectionAdmissionImpl implements ConnectionAdmission {
+    private static final String CONNECTS = "communicator.websocket.connects";
+
+    private final ConnectionAdmissionProperties properties;
+    private final Semaphore handshakes;
+    private final double tokensPerNano;
+    private final Counter accepted;
+    private final Counter rateLimited;
+    private final Counter concurrencyLimited;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    ConnectionAdmissionImpl(ConnectionAdmissionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.handshakes = new Semaphore(properties.getMaxConcurrentHandshakes());
+        this.tokensPerNano = properties.getConnectsPerSecond() / (double) TimeUnit.SECONDS.toNanos(1);
+        this.tokens = properties.getBurst();
+        this.accepted = meterRegistry.counter(CONNECTS, "result", "accepted");
+        this.rateLimited = meterRegistry.counter(CONNECTS, "result", "rejected", "reason", "rate");
+        this.concurrencyLimited = meterRegistry.counter(CONNECTS, "result", "rejected", "reason", "concurrency");
+        Gauge.builder("communicator.websocket.handshakes", handshakes,
+                s -> properties.getMaxConcurrentHandshakes() - s.availablePermits())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void acquire() {
+        if (!takeToken()) {
+            rateLimited.increment();
+            throw overloaded();
+        }
+        if (!handshakes.tryAcquire()) {
+            concurrencyLimited.increment();
+            throw overloaded();
+        }
+        accepted.increment();
+    }
+
+    @Override
+    public void release() {
+        handshakes.release();
+    }
+
+    private synchronized boolean takeToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(properties.getBurst(), tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private ServiceOverloadedException overloaded() {
+        return new ServiceOverloadedException("Too many connections, try again later", properties.getRetryAfter());
+    }
+}
@@ -0,0 +1,34 @@
+package com.kmarzecki.communicator.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of admission control for websocket connections
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.websocket.admission")
+@Getter
+@Setter
+public class ConnectionAdmissionProperties {
+    /**
+     * Sustained number of CONNECT frames admitted per second
+     */
+    private int connectsPerSecond = 500;
+    /**
+     * Number of CONNECT frames admitted at once after a quiet period
+     */
+    private int burst = 1000;
+    /**
+     * Maximum number of CONNECT frames authenticated at the same time
+     */
+    private int maxConcurrentHandshakes = 64;
+    /**
+     * Time after which rejected clients are asked to reconnect
+     */
+    private Duration retryAfter = Duration.ofSeconds(2);
+}
@@ -0,0 +1,31 @@
+package com.kmarzecki.communicator.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of issued JWT tokens
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.security.jwt")
+@Getter
+@Setter
+public class JwtProperties {
+    /**
+     * Maximum lifetime of an access token
+     */
+    private Duration accessTokenLifetime = Duration.ofHours(1);
+    /**
+     * Maximum random amount by which access token lifetimes are shortened,
+     * so clients logged in at the same time do not refresh at the same time
+     */
+    private Duration accessTokenJitter = Duration.ofMinutes(10);
+    /**
+     * Lifetime of a refresh token, renewed on every refresh
+     */
+    private Duration refreshTokenLifetime = Duration.ofDays(14);
+}
@@ -28,7 +28,7 @@ public class JwtTokenFilter extends GenericFilterBean {
             throws IOException, ServletException {
         String token = jwtTokenService.extractToken((HttpServletRequest) req);
 
-        if (token != null && jwtTokenService.validateToken(token)) {
+        if (token != null) {
             Authentication auth = jwtTokenService.getAuthentication(token);
             SecurityContextHolder.getContext().setAuthentication(auth);
         }
@@ -1,37 +1,75 @@
 package com.kmarzecki.communicator.security;
 
-import com.kmarzecki.communicator.model.auth.Role;
 import com.kmarzecki.communicator.util.DateTimeProvider;
 import io.jsonwebtoken.*;
 import lombok.AllArgsConstructor;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Objects;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.kmarzecki.communicator.util.CollectionUtils.mapList;
 
 @Component
 @AllArgsConstructor
 public class JwtTokenService {
     private static final String ROLES = "BASIC_ROLE";
+    private static final String ROLE_NAME = "name";
     private static final String SECRET_KEY = "NON_SAFE_SECRET";
     private static final String ENCODED_SECRET_KEY = Base64.getEncoder().encodeToString(SECRET_KEY.getBytes());
+    private static final String TOKEN_TYPE = "TOKEN_TYPE";
+    private static final String REFRESH_TOKEN_TYPE = "REFRESH";
     private static final String TOKEN_HEADER_NAME = "token";
-    private static final int VALID_TIME_MS = 3600000;
-    private final UserDetailsServiceImpl userDetailsService;
     private final DateTimeProvider dateProvider;
+    private final VerifiedTokenCache tokenCache;
+    private final JwtProperties properties;
+
+    /**
+     * Create an access token, expiring after the configured lifetime shortened by a random jitter
+     * @param username user username
+     * @param authorities user authorities
+     * @return access token
+     */
+    public String createToken(String username, Collection<? extends GrantedAuthority> authorities) {
+        long jitter = properties.getAccessTokenJitter().toMillis();
+        long lifetime = properties.getAccessTokenLifetime().toMillis()
+                - (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+        return createToken(username, authorities, null, lifetime);
+    }
+
+    /**
+     * Create a refresh token, which can only be exchanged for new tokens
+     * @param username user username
+     * @param authorities user authorities
+     * @return refresh token
+     */
+    public String createRefreshToken(String username, Collection<? extends GrantedAuthority> authorities) {
+        return createToken(username, authorities, REFRESH_TOKEN_TYPE, properties.getRefreshTokenLifetime().toMillis());
+    }
 
-    public String createToken(String username, Set<Role> set) {
+    private String createToken(String username, Collection<? extends GrantedAuthority> authorities, String type, long lifetimeMs) {
         Claims claims = Jwts.claims().setSubject(username);
-        claims.put(ROLES, set);
+        claims.put(ROLES, mapList(GrantedAuthority::getAuthority, authorities));
+        if (type != null) {
+            // typed tokens are single-use, their id is remembered once they are used
+            claims.put(TOKEN_TYPE, type);
+            claims.setId(UUID.randomUUID().toString());
+        }
         Date now = dateProvider.currentDate();
-        Date validity = new Date(now.getTime() + VALID_TIME_MS);
+        Date validity = new Date(now.getTime() + lifetimeMs);
         return Jwts.builder()
                 .setClaims(claims)
                 .setIssuedAt(now)
@@ -40,13 +78,61 @@ public class JwtTokenService {
                 .compact();
     }
 
+    /**
+     * Get authentication of a token, built from its claims without loading the user
+     * Verified tokens are cached until they expire, so the signature is checked once per token.
+     * @param token JWT token
+     * @return authentication of the token subject
+     * @throws JwtException if the token is invalid, expired or revoked
+     */
     public Authentication getAuthentication(String token) {
-        UserDetails userDetails = userDetailsService.loadUserByUsername(getUsername(token));
-        return new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
+        Authentication cached = tokenCache.get(token);
+        if (cached != null) {
+            return cached;
+        }
+        Claims claims = parseClaims(token);
+        if (REFRESH_TOKEN_TYPE.equals(claims.get(TOKEN_TYPE))) {
+            throw new JwtException("Refresh token used for authentication");
+        }
+        Authentication authentication = authenticationOf(claims);
+        tokenCache.put(token, authentication, claims.getIssuedAt(), claims.getExpiration());
+        return authentication;
     }
 
-    public String getUsername(String token) {
-        return Jwts.parser().setSigningKey(ENCODED_SECRET_KEY).parseClaimsJws(token).getBody().getSubject();
+    /**
+     * Get authentication of a refresh token, verifying its signature and claims and marking it as used,
+     * so each refresh token can be exchanged once
+     * @param refreshToken refresh token
+     * @return authentication of the token subject, with the roles of the token
+     * @throws JwtException if the token is not a valid refresh token, is expired, revoked or already used
+     */
+    public Authentication getRefreshAuthentication(String refreshToken) {
+        Claims claims = parseClaims(refreshToken);
+        if (!REFRESH_TOKEN_TYPE.equals(claims.get(TOKEN_TYPE))) {
+            throw new JwtException("Not a refresh token");
+        }
+        Authentication authentication = authenticationOf(claims);
+        if (claims.getId() == null || !tokenCache.consume(claims.getId(), claims.getExpiration())) {
+            throw new JwtException("Refresh token already used");
+        }
+        return authentication;
+    }
+
+    private Authentication authenticationOf(Claims claims) {
+        if (tokenCache.isRevoked(claims.getSubject(), claims.getIssuedAt())) {
+            throw new JwtException("Revoked JWT token");
+        }
+        List<GrantedAuthority> authorities = mapList(SimpleGrantedAuthority::new, roles(claims));
+        User user = new User(claims.getSubject(), "", authorities);
+        return new UsernamePasswordAuthenticationToken(user, "", authorities);
+    }
+
+    /**
+     * Revoke every token issued to a user so far, to be called when the user or its roles change
+     * @param username user username
+     */
+    public void revokeTokens(String username) {
+        tokenCache.revoke(username);
     }
 
     public String extractToken(HttpServletRequest req) {
@@ -54,13 +140,32 @@ public class JwtTokenService {
     }
 
     public String extractToken(StompHeaderAccessor accessor) {
-        return Objects.requireNonNull(accessor.getNativeHeader(TOKEN_HEADER_NAME)).get(0);
+        return accessor.getFirstNativeHeader(TOKEN_HEADER_NAME);
+    }
+
+    /**
+     * Read role names of a token, written as a list of names or, by tokens issued before, as a list of role objects
+     * @throws JwtException if the claim holds neither
+     */
+    private static List<String> roles(Claims claims) {
+        List<?> roles = claims.get(ROLES, List.class);
+        if (roles == null) {
+            throw new JwtException("Missing JWT roles claim");
+        }
+        List<String> names = new ArrayList<>(roles.size());
+        for (Object role : roles) {
+            Object name = role instanceof Map ? ((Map<?, ?>) role).get(ROLE_NAME) : role;
+            if (!(name instanceof String)) {
+                throw new JwtException("Malformed JWT roles claim");
+            }
+            names.add((String) name);
+        }
+        return names;
     }
 
-    public boolean validateToken(String token) {
+    private Claims parseClaims(String token) {
         try {
-            Jws<Claims> claims = Jwts.parser().setSigningKey(ENCODED_SECRET_KEY).parseClaimsJws(token);
-            return !claims.getBody().getExpiration().before(new Date());
+            return Jwts.parser().setSigningKey(ENCODED_SECRET_KEY).parseClaimsJws(token).getBody();
         } catch (JwtException | IllegalArgumentException e) {
             throw new JwtException("Expired or invalid JWT token");
         }
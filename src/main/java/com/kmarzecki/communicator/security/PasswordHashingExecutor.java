@@ -0,0 +1,18 @@
+package com.kmarzecki.communicator.security;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor for tasks hashing or verifying passwords, keeping them off request handling threads
+ */
+public interface PasswordHashingExecutor {
+    /**
+     * Submit a task hashing or verifying a password
+     * @param task task to run
+     * @param <T> task result type
+     * @return future completed with the task result
+     * @throws com.kmarzecki.communicator.exception.ServiceOverloadedException if no more tasks can be queued
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> task);
+}
@@ -0,0 +1,55 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Password hashing executor with a fixed number of threads and a bounded queue, rejecting tasks when the queue is full
+ */
+@Component
+class PasswordHashingExecutorImpl implements PasswordHashingExecutor {
+    private final PasswordHashingProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejected;
+
+    PasswordHashingExecutorImpl(PasswordHashingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.executor = new ThreadPoolExecutor(
+                properties.getThreads(),
+                properties.getThreads(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                new CustomizableThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.rejected = meterRegistry.counter("communicator.password.rejected");
+        Gauge.builder("communicator.password.queued", executor, e -> e.getQueue().size()).register(meterRegistry);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceOverloadedException("Too many login attempts, try again later", properties.getRetryAfter());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
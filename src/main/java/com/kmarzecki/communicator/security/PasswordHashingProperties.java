@@ -0,0 +1,34 @@
+package com.kmarzecki.communicator.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of password hashing
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.security.password")
+@Getter
+@Setter
+public class PasswordHashingProperties {
+    /**
+     * BCrypt cost, passwords hashed with a different cost are rehashed on the next login
+     */
+    private int strength = 10;
+    /**
+     * Number of threads hashing passwords
+     */
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /**
+     * Maximum number of logins and registrations waiting for a hashing thread
+     */
+    private int queueCapacity = 64;
+    /**
+     * Time after which clients rejected due to overload are asked to retry
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+}
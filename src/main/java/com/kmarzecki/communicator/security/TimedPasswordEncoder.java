@@ -0,0 +1,50 @@
+package com.kmarzecki.communicator.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt password encoder with a configurable cost, recording the time spent hashing
+ * Hashes created with any other cost are reported as needing an upgrade, so they are rehashed after a successful login.
+ */
+@Component
+class TimedPasswordEncoder implements PasswordEncoder {
+    private static final Pattern COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final int strength;
+    private final BCryptPasswordEncoder encoder;
+    private final Timer encodeTimer;
+    private final Timer matchTimer;
+
+    TimedPasswordEncoder(PasswordHashingProperties properties, MeterRegistry meterRegistry) {
+        this.strength = properties.getStrength();
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.encodeTimer = meterRegistry.timer("communicator.password.hash", "operation", "encode");
+        this.matchTimer = meterRegistry.timer("communicator.password.hash", "operation", "match");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return encodeTimer.record(() -> encoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return matchTimer.record(() -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+}
@@ -10,9 +10,10 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -25,9 +26,12 @@ import static com.kmarzecki.communicator.util.CollectionUtils.mapList;
  */
 @Service
 @AllArgsConstructor
-public class UserDetailsServiceImpl implements UserDetailsService  {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
+    private final UserIdCache userIds;
+    private final PasswordEncoder passwordEncoder;
+    private final JwtTokenService jwtTokenService;
 
     /** Check if user exists
      * @param username user username
@@ -43,11 +47,11 @@ public class UserDetailsServiceImpl implements UserDetailsService  {
      */
     public void saveUser(RegisterDto dto) {
         UserEntity user = UserEntity.builder()
-                .password(new BCryptPasswordEncoder().encode(dto.getPassword()))
+                .password(passwordEncoder.encode(dto.getPassword()))
                 .username(dto.getUsername())
                 .roles(asSet(roleRepository.findByName("USER_ROLE")))
                 .build();
-        userRepository.save(user);
+        userIds.put(user.getUsername(), userRepository.save(user).getId());
     }
 
     /**
@@ -60,6 +64,7 @@ public class UserDetailsServiceImpl implements UserDetailsService  {
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         UserEntity user = userRepository.findByUsername(username);
         if (user != null) {
+            userIds.put(user.getUsername(), user.getId());
             List<GrantedAuthority> authorities = mapList(
                     role -> new SimpleGrantedAuthority(role.getName()),
                     user.getRoles()
@@ -69,4 +74,20 @@ public class UserDetailsServiceImpl implements UserDetailsService  {
             throw new UsernameNotFoundException("Not found");
         }
     }
+
+    /**
+     * Replace the password hash of a user, called after a login with a hash created with an outdated cost
+     * Tokens issued to the user before are revoked, as after every change of the user credentials.
+     * @param user user details
+     * @param newPassword new password hash
+     * @return user details with the new password hash
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        UserEntity entity = userRepository.findByUsername(user.getUsername());
+        entity.setPassword(newPassword);
+        userRepository.save(entity);
+        jwtTokenService.revokeTokens(user.getUsername());
+        return User.withUserDetails(user).password(newPassword).build();
+    }
 }
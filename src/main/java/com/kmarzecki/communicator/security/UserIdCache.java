@@ -0,0 +1,26 @@
+package com.kmarzecki.communicator.security;
+
+/**
+ * Bounded cache of user ids by username
+ */
+public interface UserIdCache {
+    /**
+     * Get id of a user, loading it if it is not cached
+     * @param username user username
+     * @return user id, null if there is no such user
+     */
+    Integer getId(String username);
+
+    /**
+     * Cache id of a user
+     * @param username user username
+     * @param id user id
+     */
+    void put(String username, Integer id);
+
+    /**
+     * Remove a user from the cache
+     * @param username user username
+     */
+    void evict(String username);
+}
@@ -0,0 +1,56 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.repository.UserRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * User id cache evicting least recently used entries
+ */
+@Component
+class UserIdCacheImpl implements UserIdCache {
+    private static final int MAX_ENTRIES = 10000;
+
+    private final UserRepository userRepository;
+    private final Map<String, Integer> ids = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    UserIdCacheImpl(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public Integer getId(String username) {
+        synchronized (ids) {
+            Integer id = ids.get(username);
+            if (id != null) {
+                return id;
+            }
+        }
+        Integer id = userRepository.findIdByUsername(username);
+        if (id != null) {
+            put(username, id);
+        }
+        return id;
+    }
+
+    @Override
+    public void put(String username, Integer id) {
+        synchronized (ids) {
+            ids.put(username, id);
+        }
+    }
+
+    @Override
+    public void evict(String username) {
+        synchronized (ids) {
+            ids.remove(username);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.kmarzecki.communicator.security;
+
+import org.springframework.security.core.Authentication;
+
+import java.util.Date;
+
+/**
+ * Bounded cache of authentications built from already verified tokens
+ */
+public interface VerifiedTokenCache {
+    /**
+     * Get authentication of a verified token
+     * Revocation is checked on every hit, so a token revoked while it was being cached is not returned.
+     * @param token JWT token
+     * @return authentication, null if the token is not cached, expired or revoked
+     */
+    Authentication get(String token);
+
+    /**
+     * Cache authentication of a verified token until the token expires
+     * @param token JWT token
+     * @param authentication authentication built from the token claims
+     * @param issuedAt token issue time
+     * @param expiration token expiration
+     */
+    void put(String token, Authentication authentication, Date issuedAt, Date expiration);
+
+    /**
+     * Revoke every token issued to a user so far
+     * @param username user username
+     */
+    void revoke(String username);
+
+    /**
+     * Mark a single-use token as used, it is remembered until it expires
+     * @param tokenId id of the token
+     * @param expiration token expiration
+     * @return whether the token had not been used before
+     */
+    boolean consume(String tokenId, Date expiration);
+
+    /**
+     * Check whether a token was revoked
+     * @param username user username
+     * @param issuedAt token issue time
+     * @return whether the token was issued before tokens of the user were revoked
+     */
+    boolean isRevoked(String username, Date issuedAt);
+}
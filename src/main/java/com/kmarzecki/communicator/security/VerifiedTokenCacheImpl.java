@@ -0,0 +1,109 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.util.DateTimeProvider;
+import lombok.AllArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Verified token cache keyed by SHA-256 digests of tokens, evicting least recently used entries
+ * Revocations are remembered for the maximum token lifetime, after which every revoked token has expired anyway.
+ * Ids of used single-use tokens are remembered until the tokens expire.
+ */
+@Component
+class VerifiedTokenCacheImpl implements VerifiedTokenCache {
+    private static final int MAX_ENTRIES = 10000;
+
+    private final DateTimeProvider dateProvider;
+    private final JwtProperties properties;
+    private final Map<String, Long> revocations = new ConcurrentHashMap<>();
+    private final Map<String, Long> usedTokens = new ConcurrentHashMap<>();
+    private final Map<String, CachedToken> tokens = new LinkedHashMap<String, CachedToken>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedToken> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    VerifiedTokenCacheImpl(DateTimeProvider dateProvider, JwtProperties properties) {
+        this.dateProvider = dateProvider;
+        this.properties = properties;
+    }
+
+    @Override
+    public Authentication get(String token) {
+        String digest = digest(token);
+        long now = dateProvider.currentDate().getTime();
+        synchronized (tokens) {
+            CachedToken cached = tokens.get(digest);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresAt <= now || isRevoked(cached.authentication.getName(), cached.issuedAt)) {
+                tokens.remove(digest);
+                return null;
+            }
+            return cached.authentication;
+        }
+    }
+
+    @Override
+    public void put(String token, Authentication authentication, Date issuedAt, Date expiration) {
+        CachedToken cached = new CachedToken(authentication, issuedAt, expiration.getTime());
+        synchronized (tokens) {
+            tokens.put(digest(token), cached);
+        }
+    }
+
+    @Override
+    public void revoke(String username) {
+        long now = dateProvider.currentDate().getTime();
+        revocations.put(username, now);
+        long maxLifetime = Math.max(
+                properties.getAccessTokenLifetime().toMillis(),
+                properties.getRefreshTokenLifetime().toMillis());
+        revocations.values().removeIf(revokedAt -> revokedAt < now - maxLifetime);
+        synchronized (tokens) {
+            tokens.values().removeIf(cached -> username.equals(cached.authentication.getName()));
+        }
+    }
+
+    @Override
+    public boolean consume(String tokenId, Date expiration) {
+        long now = dateProvider.currentDate().getTime();
+        usedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+        return usedTokens.putIfAbsent(tokenId, expiration.getTime()) == null;
+    }
+
+    @Override
+    public boolean isRevoked(String username, Date issuedAt) {
+        Long revokedAt = revocations.get(username);
+        // issue times are stored with a precision of seconds
+        return revokedAt != null && issuedAt.getTime() < revokedAt / 1000 * 1000;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class CachedToken {
+        private final Authentication authentication;
+        private final Date issuedAt;
+        private final long expiresAt;
+    }
+}
@@ -10,7 +10,7 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.AuthenticationEntryPoint;
 
 import javax.servlet.http.HttpServletResponse;
@@ -26,10 +26,11 @@ public class WebSecurityConfigurationAdapter extends WebSecurityConfigurerAdapte
     private static final String UNAUTHORIZED = "Unauthorized";
     private final JwtTokenService jwtTokenService;
     private final UserDetailsServiceImpl userDetailsService;
+    private final PasswordEncoder passwordEncoder;
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userDetailsService).passwordEncoder(new BCryptPasswordEncoder());
+        auth.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder);
     }
 
     @Override
@@ -42,7 +43,9 @@ public class WebSecurityConfigurationAdapter extends WebSecurityConfigurerAdapte
                     .antMatchers(HttpMethod.OPTIONS,"/**").permitAll()//allow CORS option calls
                 .antMatchers("/api/auth/login").permitAll()
                 .antMatchers("/api/auth/register").permitAll()
+                .antMatchers("/api/auth/refresh").permitAll()
                 .antMatchers("/ws_endpoint/**").permitAll()
+                .antMatchers("/ws_native").permitAll()
                 .antMatchers("/static/**").permitAll()
                 .antMatchers("/uk.svg").permitAll()
                 .antMatchers("/poland.svg").permitAll()
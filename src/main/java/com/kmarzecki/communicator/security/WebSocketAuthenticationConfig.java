@@ -1,5 +1,7 @@
 package com.kmarzecki.communicator.security;
 
+import com.kmarzecki.communicator.exception.OperationNotPermittedException;
+import com.kmarzecki.communicator.service.ChannelMembership;
 import lombok.AllArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.Ordered;
@@ -11,13 +13,20 @@ import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.security.Principal;
+
+import static com.kmarzecki.communicator.util.MessageUtils.CHANNEL_TOPIC_PREFIX;
+import static com.kmarzecki.communicator.util.MessageUtils.channelIdOf;
+import static com.kmarzecki.communicator.util.MessageUtils.isPatternDestination;
+
 /**
  * WebSocket authentication configuration
- * Responsible for settings up authentication of websocket connections
+ * Responsible for settings up authentication of websocket connections, admitted through {@link ConnectionAdmission},
+ * and authorization of subscriptions to conversation channel topics
  */
 @Configuration
 @EnableWebSocketMessageBroker
@@ -25,6 +34,8 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 @AllArgsConstructor
 public class WebSocketAuthenticationConfig implements WebSocketMessageBrokerConfigurer {
     private final JwtTokenService tokenService;
+    private final ChannelMembership channelMembership;
+    private final ConnectionAdmission connectionAdmission;
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
@@ -34,12 +45,43 @@ public class WebSocketAuthenticationConfig implements WebSocketMessageBrokerConf
                 StompHeaderAccessor accessor =
                         MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
                 if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
-                    String accessToken = tokenService.extractToken(accessor);
-                    Authentication authentication = tokenService.getAuthentication(accessToken);
-                    accessor.setUser(authentication);
+                    authenticate(accessor);
+                }
+                if (accessor != null && StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+                    authorizeSubscription(accessor.getDestination(), accessor.getUser());
                 }
                 return message;
             }
         });
     }
+
+    private void authenticate(StompHeaderAccessor accessor) {
+        String accessToken = tokenService.extractToken(accessor);
+        if (accessToken == null) {
+            throw new BadCredentialsException("Missing token");
+        }
+        connectionAdmission.acquire();
+        try {
+            accessor.setUser(tokenService.getAuthentication(accessToken));
+        } finally {
+            connectionAdmission.release();
+        }
+    }
+
+    /**
+     * Allow subscriptions only to concrete destinations, and to the topics of a channel only for its members
+     */
+    private void authorizeSubscription(String destination, Principal user) {
+        if (destination == null || isPatternDestination(destination)) {
+            throw new OperationNotPermittedException("Invalid subscription destination " + destination);
+        }
+        if (!destination.startsWith(CHANNEL_TOPIC_PREFIX)) {
+            return;
+        }
+        Integer channelId = channelIdOf(destination)
+                .orElseThrow(() -> new OperationNotPermittedException("Invalid channel destination " + destination));
+        if (user == null || !channelMembership.isMember(channelId, user.getName())) {
+            throw new OperationNotPermittedException("Not a member of channel " + channelId);
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package com.kmarzecki.communicator.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of conversation channel members
+ */
+public interface ChannelMembership {
+    /**
+     * Check if a user is a member of a channel
+     * @param channelId channel id
+     * @param username user username
+     * @return whether the user is a member of the channel
+     */
+    boolean isMember(Integer channelId, String username);
+
+    /**
+     * Get members of a channel
+     * @param channelId channel id
+     * @return unmodifiable set of member usernames, empty if the channel does not exist
+     */
+    Set<String> getMembers(Integer channelId);
+
+    /**
+     * Get members of many channels, loading the channels missing from the index with a single query
+     * @param channelIds channel ids
+     * @return map of channel ids to unmodifiable sets of member usernames
+     */
+    Map<Integer, Set<String>> getMembers(Collection<Integer> channelIds);
+
+    /**
+     * Replace members of a channel, called whenever the membership of a channel changes
+     * @param channelId channel id
+     * @param usernames member usernames
+     */
+    void setMembers(Integer channelId, Collection<String> usernames);
+}
@@ -0,0 +1,148 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.ChannelMember;
+import com.kmarzecki.communicator.repository.ChannelRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Channel membership index loading member usernames of a channel once, with projection queries
+ * The index holds at most a fixed number of channels, evicting the least recently used ones
+ * down to nine tenths of the limit. Channels without members, which includes ids of channels that do not exist,
+ * are never indexed, so probing random ids cannot grow it.
+ */
+@Component
+@AllArgsConstructor
+class ChannelMembershipImpl implements ChannelMembership {
+    static final int MAX_CHANNELS = 10000;
+    private static final int EVICTION_TARGET = MAX_CHANNELS / 10 * 9;
+
+    private final ChannelRepository channelRepository;
+    private final Map<Integer, Members> members = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    @Override
+    public boolean isMember(Integer channelId, String username) {
+        return getMembers(channelId).contains(username);
+    }
+
+    @Override
+    public Set<String> getMembers(Integer channelId) {
+        Members channelMembers = members.get(channelId);
+        if (channelMembers == null) {
+            return index(channelId, channelRepository.findUsernamesById(channelId));
+        }
+        return channelMembers.get();
+    }
+
+    @Override
+    public Map<Integer, Set<String>> getMembers(Collection<Integer> channelIds) {
+        Map<Integer, Set<String>> result = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer channelId : channelIds) {
+            Members channelMembers = members.get(channelId);
+            if (channelMembers == null) {
+                missing.add(channelId);
+            } else {
+                result.put(channelId, channelMembers.get());
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        Map<Integer, List<String>> loaded = channelRepository.findMembersByIdIn(missing).stream()
+                .collect(Collectors.groupingBy(
+                        ChannelMember::getChannelId,
+                        Collectors.mapping(ChannelMember::getUsername, Collectors.toList())));
+        for (Integer channelId : missing) {
+            result.put(channelId, index(channelId, loaded.getOrDefault(channelId, Collections.emptyList())));
+        }
+        return result;
+    }
+
+    @Override
+    public void setMembers(Integer channelId, Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            members.remove(channelId);
+            return;
+        }
+        members.put(channelId, new Members(compact(usernames)));
+        evictIfNeeded();
+    }
+
+    /**
+     * Index loaded members of a channel, unless it has none
+     * @return members of the channel, those indexed by a racing load if there are any
+     */
+    private Set<String> index(Integer channelId, Collection<String> usernames) {
+        Set<String> channelMembers = compact(usernames);
+        if (channelMembers.isEmpty()) {
+            return channelMembers;
+        }
+        Members raced = members.putIfAbsent(channelId, new Members(channelMembers));
+        if (raced != null) {
+            return raced.get();
+        }
+        evictIfNeeded();
+        return channelMembers;
+    }
+
+    private void evictIfNeeded() {
+        if (members.size() <= MAX_CHANNELS || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<Integer, Members>> candidates = new ArrayList<>(members.size());
+            for (Map.Entry<Integer, Members> entry : members.entrySet()) {
+                entry.getValue().evictionRank = entry.getValue().lastAccess;
+                candidates.add(entry);
+            }
+            candidates.sort(Comparator.comparingLong(entry -> entry.getValue().evictionRank));
+            for (int i = 0; i < candidates.size() && members.size() > EVICTION_TARGET; i++) {
+                members.remove(candidates.get(i).getKey(), candidates.get(i).getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static Set<String> compact(Collection<String> usernames) {
+        return usernames.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(usernames));
+    }
+
+    /**
+     * Indexed members of a channel with the time they were last read
+     */
+    private static class Members {
+        private final Set<String> usernames;
+        private volatile long lastAccess = System.nanoTime();
+        /**
+         * Access time snapshot sorted on by the evicting thread
+         */
+        private long evictionRank;
+
+        private Members(Set<String> usernames) {
+            this.usernames = usernames;
+        }
+
+        private Set<String> get() {
+            lastAccess = System.nanoTime();
+            return usernames;
+        }
+    }
+}
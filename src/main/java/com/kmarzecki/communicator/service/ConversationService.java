@@ -2,8 +2,10 @@ package com.kmarzecki.communicator.service;
 
 import com.kmarzecki.communicator.api.conversation.MessageRequest;
 import com.kmarzecki.communicator.model.Language;
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
 
 import java.security.Principal;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -12,8 +14,8 @@ import java.util.Set;
 public interface ConversationService {
 
     /**
-     * Get Channels available to user
-     * Pushes the response through a websocket connection
+     * Get Channels available to user, with their member counts and last messages
+     * Pushes the whole list in a single message through a websocket connection
      * @param principal User principal
      */
     void getUserChannels(Principal principal);
@@ -30,12 +32,22 @@ public interface ConversationService {
 
     /**
      * Message a channel
-     * Pushes the response through a websocket connection
+     * Pushes the response through a websocket connection, messages of a channel are published in sequence number order
      * @param from User username that sent the message
-     * @param request message request
+     * @param request message request, acknowledged to the sender if it carries a correlation id,
+     *                a request resent with the correlation id of a recent message is only acknowledged again
      */
     void message(String from, MessageRequest request);
 
+    /**
+     * Tell the sender of a message that it has been rejected
+     * Does nothing if the message request carries no correlation id
+     * @param from User username that sent the message
+     * @param request rejected message request
+     * @param reason reason the message has been rejected for
+     */
+    void rejectMessage(String from, MessageRequest request, String reason);
+
     /**
      * Get messages in a channel
      * Pushes the response through a websocket connection
@@ -45,11 +57,53 @@ public interface ConversationService {
     void getMessages(String user, Integer channelId);
 
     /**
-     * Get messages in a chennel before a specified time
-     * Pushes the response through a websocket connection
+     * Get a page of messages in a channel preceding a cursor
+     * Pushes the response through a websocket connection as a single frame
      * @param requester Principal of the requesting user
      * @param channelId channel id
-     * @param before Cutout point timestamp
+     * @param cursor position before which messages are returned, null for the latest messages
+     * @param size requested page size, capped by the server
+     */
+    void getPreviousMessages(Principal requester, Integer channelId, MessageCursor cursor, Integer size);
+
+    /**
+     * Get messages in a channel with sequence numbers in a range, to fill a gap noticed by the client
+     * Pushes the response through a websocket connection as a single frame
+     * @param user User requesting messages
+     * @param channelId channel id
+     * @param fromSeq first sequence number, inclusive
+     * @param toSeq last sequence number, inclusive, ranges longer than the maximum page size are truncated
+     */
+    void getMessageRange(String user, Integer channelId, Long fromSeq, Long toSeq);
+
+    /**
+     * Get messages sent to all channels of a user after the last messages the user has seen
+     * Pushes the response through a websocket connection in batches
+     * @param user User requesting messages
+     * @param lastSeen Id of the last seen message, keyed by channel id, channels missing from it get their latest page
+     */
+    void sync(String user, Map<Integer, Integer> lastSeen);
+
+    /**
+     * Mark a channel as read up to a message
+     * Pushes the new read state to all sessions of the user through a websocket connection
+     * @param user username of the reader
+     * @param channelId channel id
+     * @param messageId id of the last read message
+     */
+    void markRead(String user, Integer channelId, Integer messageId);
+
+    /**
+     * Send the user the channels which received messages while the user was offline, and clear them
+     * Pushes the response through a websocket connection
+     * @param user username of the user
+     */
+    void drainInbox(String user);
+
+    /**
+     * Show other members of a channel that a user is typing
+     * @param user username of the typing user
+     * @param channelId channel id
      */
-    void getPreviousMessages(Principal requester, Integer channelId, Long before);
+    void typing(String user, Integer channelId);
 }
@@ -6,45 +6,109 @@ import com.kmarzecki.communicator.model.Language;
 import com.kmarzecki.communicator.model.auth.UserEntity;
 import com.kmarzecki.communicator.model.conversation.ChannelEntity;
 import com.kmarzecki.communicator.model.conversation.ChannelListResponse;
+import com.kmarzecki.communicator.model.conversation.ChannelSummary;
+import com.kmarzecki.communicator.model.conversation.MessageAckResponse;
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
 import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import com.kmarzecki.communicator.model.conversation.MessagePageResponse;
+import com.kmarzecki.communicator.model.conversation.MessageRangeResponse;
 import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import com.kmarzecki.communicator.model.conversation.SyncResponse;
+import com.kmarzecki.communicator.model.conversation.UnreadResponse;
 import com.kmarzecki.communicator.repository.ChannelRepository;
-import com.kmarzecki.communicator.repository.MessageRepository;
+import com.kmarzecki.communicator.repository.MessageStore;
 import com.kmarzecki.communicator.repository.UserRepository;
+import com.kmarzecki.communicator.security.UserIdCache;
 import com.kmarzecki.communicator.util.DateTimeProvider;
+import com.kmarzecki.communicator.util.MessageSender;
 import lombok.AllArgsConstructor;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.stereotype.Service;
 
 import java.security.Principal;
-import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import static com.kmarzecki.communicator.util.CollectionUtils.mapList;
 import static com.kmarzecki.communicator.util.InternationalizationUtil.*;
 import static com.kmarzecki.communicator.util.MessageUtils.*;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 
 @Service
 @AllArgsConstructor
 class ConversationServiceImpl implements ConversationService {
+    private static final int PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int SYNC_BATCH_SIZE = 100;
+    private static final int SYNC_CHANNEL_LIMIT = 500;
+    private static final int PREVIEW_LENGTH = 100;
+    private static final int CHANNEL_LOCK_STRIPES = 256;
+    private static final String NOT_A_MEMBER = "Not a member of the channel";
     private final ChannelRepository channelRepository;
     private final UserRepository userRepository;
-    private final SimpMessageSendingOperations messagingTemplate;
-    private final MessageRepository messageRepository;
+    private final MessageSender messageSender;
+    private final MessageStore messageStore;
     private final DateTimeProvider dateTimeProvider;
+    private final RecentMessageCache recentMessages;
+    private final ChannelMembership channelMembership;
+    private final UserIdCache userIds;
+    private final ReadState readState;
+    private final PresenceRegistry presenceRegistry;
+    private final OfflineInbox offlineInbox;
+    private final TypingIndicators typingIndicators;
+    private final MessageAcks messageAcks;
+    /**
+     * Locks ordering sequence numbers of a channel with the publication of its messages, striped by channel id
+     */
+    private final Object[] channelLocks = newLocks();
 
     public void getUserChannels(Principal principal) {
-        mapList(this::map,
-                channelRepository.findAllByUsers_Username(principal.getName())
-        ).forEach(c -> messagingTemplate.convertAndSendToUser(
+        List<ChannelSummary> channels = channelRepository.findSummariesByUsername(principal.getName());
+        List<Integer> channelIds = mapList(ChannelSummary::getId, channels);
+        Map<Integer, Set<String>> members = channelMembership.getMembers(channelIds);
+        Map<Integer, UnreadResponse> unread = readState.getReadState(principal.getName(), channelIds);
+        Map<Integer, MessageResponse> lastMessages = lastMessages(channelIds);
+        messageSender.sendToUser(
                 principal.getName(),
-                CHANNELS_TOPIC,
-                c));
+                CHANNEL_LIST_TOPIC,
+                mapList(c -> map(c, members.get(c.getId()), unread.get(c.getId()), lastMessages.get(c.getId())), channels));
+    }
+
+    /**
+     * Get the last message of many channels, loading the ones missing in the cache with a single store query
+     */
+    private Map<Integer, MessageResponse> lastMessages(List<Integer> channelIds) {
+        Map<Integer, MessageResponse> lastMessages = new HashMap<>();
+        List<Integer> uncached = new ArrayList<>();
+        for (Integer channelId : channelIds) {
+            Optional<List<MessageResponse>> latest = recentMessages.getLatest(channelId, 1);
+            if (latest.isPresent()) {
+                latest.get().stream().findFirst().ifPresent(message -> lastMessages.put(channelId, message));
+            } else {
+                uncached.add(channelId);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            Map<Integer, MessageEntity> stored = messageStore.findLastMessages(uncached);
+            for (Integer channelId : uncached) {
+                MessageEntity entity = stored.get(channelId);
+                if (entity == null) {
+                    // the whole history of the channel is empty
+                    recentMessages.fill(channelId, emptyList(), true);
+                    continue;
+                }
+                MessageResponse message = map(entity);
+                recentMessages.fill(channelId, singletonList(message), false);
+                lastMessages.put(channelId, message);
+            }
+        }
+        return lastMessages;
     }
 
     @Override
@@ -52,11 +116,11 @@ class ConversationServiceImpl implements ConversationService {
         usernames.add(creator.getName());
         Set<UserEntity> users = userRepository.findAllByUsernameIn(usernames);
         if (users.size() != usernames.size()) {
-            sendError(messagingTemplate, creator.getName(), cannotFindRequestedUsers(language));
+            sendError(messageSender, creator.getName(), cannotFindRequestedUsers(language));
             throw new OperationNotPermittedException();
         }
         if (channelRepository.existsByNameAndUsers_UsernameIn(channelName, usernames)){
-            sendError(messagingTemplate, creator.getName(), conversationNameIsNotUnique(language) );
+            sendError(messageSender, creator.getName(), conversationNameIsNotUnique(language) );
             throw new OperationNotPermittedException();
         }
 
@@ -64,72 +128,211 @@ class ConversationServiceImpl implements ConversationService {
                 .name(channelName)
                 .users(users)
                 .build());
-        usernames.forEach(username -> messagingTemplate.convertAndSendToUser(
-                username,
-                CHANNELS_TOPIC,
-                map(entity)));
+        channelMembership.setMembers(entity.getId(), usernames);
+        messageSender.sendToUsers(usernames, CHANNELS_TOPIC, map(entity));
     }
 
     @Override
     public void message(String from, MessageRequest request) {
-        ChannelEntity channelEntity = channelRepository.getOne(request.getChannelId());
-        UserEntity userEntity = userRepository.findByUsername(from);
+        if (request.getCorrelationId() != null) {
+            Optional<MessageAckResponse> sent = messageAcks.find(from, request.getCorrelationId());
+            if (sent.isPresent()) {
+                messageSender.sendToUser(from, MESSAGE_ACK_TOPIC, sent.get());
+                return;
+            }
+        }
+        if (!channelMembership.isMember(request.getChannelId(), from)) {
+            rejectMessage(from, request, NOT_A_MEMBER);
+            throw new OperationNotPermittedException(NOT_A_MEMBER);
+        }
         MessageEntity message = MessageEntity.builder()
                 .channelId(request.getChannelId())
-                .user(userEntity)
+                .userId(userIds.getId(from))
+                .username(from)
                 .payload(request.getPayload())
                 .time(dateTimeProvider.currentLocalDateTime())
                 .build();
-        MessageResponse response = map(messageRepository.save(message));
-        channelEntity.getUsers().forEach(user -> messagingTemplate.convertAndSendToUser(
-                user.getUsername(),
-                MESSAGES_TOPIC,
-                response
-                ));
+        MessageResponse response;
+        synchronized (channelLock(request.getChannelId())) {
+            response = map(messageStore.append(message));
+            recentMessages.add(response);
+            messageSender.send(channelTopic(request.getChannelId()), response);
+        }
+        typingIndicators.stopped(from, request.getChannelId());
+        Set<String> members = channelMembership.getMembers(request.getChannelId());
+        readState.messageSent(response, members);
+        for (String member : members) {
+            if (!presenceRegistry.isOnline(member)) {
+                offlineInbox.add(member, request.getChannelId());
+            }
+        }
+        if (request.getCorrelationId() != null) {
+            MessageAckResponse ack = MessageAckResponse.builder()
+                    .correlationId(request.getCorrelationId())
+                    .id(response.getId())
+                    .channelId(response.getChannelId())
+                    .seq(response.getSeq())
+                    .time(response.getTime())
+                    .build();
+            messageAcks.add(from, ack);
+            messageSender.sendToUser(from, MESSAGE_ACK_TOPIC, ack);
+        }
     }
 
     @Override
-    public void getMessages(String user, Integer channelId) {
-        ChannelEntity channelEntity = channelRepository.getOne(channelId);
-        if(channelEntity.getUsers().stream().noneMatch(u -> u.getUsername().equals(user))) {
-            throw new OperationNotPermittedException();
+    public void rejectMessage(String from, MessageRequest request, String reason) {
+        if (request.getCorrelationId() != null) {
+            messageSender.sendToUser(from, MESSAGE_ACK_TOPIC, MessageAckResponse.builder()
+                    .correlationId(request.getCorrelationId())
+                    .error(reason)
+                    .channelId(request.getChannelId())
+                    .build());
         }
-        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "time"));
-        List<MessageEntity> messages = messageRepository.findAllByChannelId(channelId, pageable);
-        messages.forEach(m -> messagingTemplate.convertAndSendToUser(
+    }
+
+    @Override
+    public void getMessages(String user, Integer channelId) {
+        checkMember(user, channelId);
+        List<MessageResponse> messages = recentMessages.getLatest(channelId, PAGE_SIZE)
+                .orElseGet(() -> loadLatestMessages(channelId));
+        messages.forEach(m -> messageSender.sendToUser(
                 user,
                 MESSAGES_TOPIC,
-                map(m)
+                m
         ));
     }
 
+    private List<MessageResponse> loadLatestMessages(Integer channelId) {
+        List<MessageResponse> messages = mapList(this::map, messageStore.findLatest(channelId, PAGE_SIZE));
+        recentMessages.fill(channelId, messages, messages.size() < PAGE_SIZE);
+        return messages;
+    }
+
 
     @Override
-    public void getPreviousMessages(Principal requester, Integer channelId, Long beforeTime) {
-        ChannelEntity channelEntity = channelRepository.getOne(channelId);
-        if(channelEntity.getUsers().stream().noneMatch(u -> u.getUsername().equals(requester.getName()))) {
-            throw new OperationNotPermittedException();
-        }
-        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "time"));
-        List<MessageEntity> messages = messageRepository.findAllByChannelIdAndTimeBefore(
-                channelId,
-                LocalDateTime.ofEpochSecond(beforeTime, 0, ZoneOffset.ofTotalSeconds(0)),
-                pageable
-        );
-        messages.forEach(m -> messagingTemplate.convertAndSendToUser(
+    public void getPreviousMessages(Principal requester, Integer channelId, MessageCursor cursor, Integer size) {
+        checkMember(requester.getName(), channelId);
+        int pageSize = size == null ? PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<MessageEntity> messages = cursor == null
+                ? messageStore.findLatest(channelId, pageSize + 1)
+                : messageStore.findBefore(channelId, cursor, pageSize + 1);
+        boolean hasMore = messages.size() > pageSize;
+        List<MessageEntity> page = hasMore ? messages.subList(0, pageSize) : messages;
+        messageSender.sendToUser(
                 requester.getName(),
                 PREVIOUS_MESSAGES_TOPIC,
-                map(m)
-        ));
+                MessagePageResponse.builder()
+                        .channelId(channelId)
+                        .messages(mapList(this::map, page))
+                        .nextCursor(hasMore ? MessageCursor.of(page.get(page.size() - 1)).encode() : null)
+                        .build());
+    }
+
+    @Override
+    public void getMessageRange(String user, Integer channelId, Long fromSeq, Long toSeq) {
+        checkMember(user, channelId);
+        List<MessageEntity> messages = fromSeq > toSeq
+                ? emptyList()
+                : messageStore.findRange(channelId, fromSeq, toSeq, MAX_PAGE_SIZE + 1);
+        boolean truncated = messages.size() > MAX_PAGE_SIZE;
+        messageSender.sendToUser(user, MESSAGE_RANGE_TOPIC, MessageRangeResponse.builder()
+                .channelId(channelId)
+                .messages(mapList(this::map, truncated ? messages.subList(0, MAX_PAGE_SIZE) : messages))
+                .truncated(truncated)
+                .build());
+    }
+
+    @Override
+    public void sync(String user, Map<Integer, Integer> lastSeen) {
+        List<Integer> truncated = new ArrayList<>();
+        List<Integer> reset = new ArrayList<>();
+        List<MessageResponse> batch = new ArrayList<>(SYNC_BATCH_SIZE);
+        for (ChannelSummary channel : channelRepository.findSummariesByUsername(user)) {
+            Integer channelId = channel.getId();
+            Integer lastId = lastSeen == null ? null : lastSeen.get(channelId);
+            List<MessageResponse> missing;
+            if (lastId == null) {
+                reset.add(channelId);
+                missing = new ArrayList<>(recentMessages.getLatest(channelId, PAGE_SIZE)
+                        .orElseGet(() -> loadLatestMessages(channelId)));
+                Collections.reverse(missing);
+            } else {
+                missing = recentMessages.getAfter(channelId, lastId)
+                        .orElseGet(() -> loadMessagesAfter(channelId, lastId));
+                if (missing.size() > SYNC_CHANNEL_LIMIT) {
+                    truncated.add(channelId);
+                    missing = missing.subList(0, SYNC_CHANNEL_LIMIT);
+                }
+            }
+            for (MessageResponse message : missing) {
+                batch.add(message);
+                if (batch.size() == SYNC_BATCH_SIZE) {
+                    sendSyncBatch(user, batch, false, null, null);
+                    batch.clear();
+                }
+            }
+        }
+        sendSyncBatch(user, batch, true, truncated, reset);
+    }
+
+    private List<MessageResponse> loadMessagesAfter(Integer channelId, Integer messageId) {
+        return mapList(this::map, messageStore.findAfter(channelId, messageId, SYNC_CHANNEL_LIMIT + 1));
+    }
+
+    private void sendSyncBatch(String user, List<MessageResponse> batch, boolean last,
+                               List<Integer> truncated, List<Integer> reset) {
+        messageSender.sendToUser(user, SYNC_TOPIC, SyncResponse.builder()
+                .messages(new ArrayList<>(batch))
+                .last(last)
+                .truncatedChannels(truncated)
+                .resetChannels(reset)
+                .build());
+    }
+
+    @Override
+    public void markRead(String user, Integer channelId, Integer messageId) {
+        checkMember(user, channelId);
+        readState.markRead(user, channelId, messageId).ifPresent(response ->
+                messageSender.sendDroppableToUsers(singletonList(user), UNREAD_TOPIC, response));
+    }
+
+    @Override
+    public void drainInbox(String user) {
+        messageSender.sendToUser(user, INBOX_TOPIC, offlineInbox.drain(user));
+    }
+
+    @Override
+    public void typing(String user, Integer channelId) {
+        checkMember(user, channelId);
+        typingIndicators.typing(user, channelId);
+    }
+
+    private Object channelLock(Integer channelId) {
+        return channelLocks[Math.floorMod(channelId, CHANNEL_LOCK_STRIPES)];
+    }
+
+    private static Object[] newLocks() {
+        Object[] locks = new Object[CHANNEL_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private void checkMember(String user, Integer channelId) {
+        if (!channelMembership.isMember(channelId, user)) {
+            throw new OperationNotPermittedException();
+        }
     }
 
     private MessageResponse map(MessageEntity entity) {
         return MessageResponse.builder()
                 .id(entity.getId())
                 .channelId(entity.getChannelId())
+                .seq(entity.getSeq())
                 .payload(entity.getPayload())
                 .time(entity.getTime().toEpochSecond(ZoneOffset.ofTotalSeconds(0)))
-                .username(entity.getUser().getUsername())
+                .username(entity.getUsername())
                 .build();
     }
 
@@ -138,6 +341,30 @@ class ConversationServiceImpl implements ConversationService {
                 .id(c.getId())
                 .name(c.getName())
                 .users(mapList(UserEntity::getUsername, c.getUsers()))
+                .memberCount(c.getUsers().size())
                 .build();
     }
+
+    private ChannelListResponse map(ChannelSummary c, Set<String> members, UnreadResponse unread, MessageResponse lastMessage) {
+        ChannelListResponse.ChannelListResponseBuilder builder = ChannelListResponse.builder()
+                .id(c.getId())
+                .name(c.getName())
+                .users(new ArrayList<>(members))
+                .memberCount(members.size())
+                .lastReadMessageId(unread.getLastReadMessageId())
+                .unreadCount(unread.getUnreadCount());
+        if (lastMessage != null) {
+            builder.lastMessagePreview(preview(lastMessage.getPayload()))
+                    .lastMessageUsername(lastMessage.getUsername())
+                    .lastMessageTime(lastMessage.getTime());
+        }
+        return builder.build();
+    }
+
+    private static String preview(String payload) {
+        if (payload == null || payload.codePointCount(0, payload.length()) <= PREVIEW_LENGTH) {
+            return payload;
+        }
+        return payload.substring(0, payload.offsetByCodePoints(0, PREVIEW_LENGTH));
+    }
 }
@@ -6,13 +6,15 @@ import com.kmarzecki.communicator.model.friends.FriendshipEntity;
 import com.kmarzecki.communicator.model.friends.FriendshipResponse;
 import com.kmarzecki.communicator.repository.FriendshipRepository;
 import com.kmarzecki.communicator.security.UserDetailsServiceImpl;
+import com.kmarzecki.communicator.util.MessageSender;
 import lombok.AllArgsConstructor;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.security.Principal;
 
+import static java.util.Arrays.asList;
+
 import static com.kmarzecki.communicator.util.InternationalizationUtil.*;
 import static com.kmarzecki.communicator.util.MessageUtils.*;
 
@@ -21,15 +23,16 @@ import static com.kmarzecki.communicator.util.MessageUtils.*;
 class FriendsServiceImpl implements FriendsService {
     private final FriendshipRepository friendshipRepository;
     private final UserDetailsServiceImpl userService;
-    private final SimpMessageSendingOperations messagingTemplate;
+    private final MessageSender messageSender;
+    private final PresenceRegistry presenceRegistry;
 
     @Override
     public void getFriendsFor(Principal principal) {
         String user = principal.getName();
         friendshipRepository.findAllByRequesterEqualsOrTargetEquals(user, user)
                 .stream()
-                .map(this::map)
-                .forEach(f -> messagingTemplate.convertAndSendToUser(
+                .map(f -> map(f, presenceRegistry.isOnline(user.equals(f.getRequester()) ? f.getTarget() : f.getRequester())))
+                .forEach(f -> messageSender.sendToUser(
                         principal.getName(),
                         FRIENDS_TOPIC,
                         f));
@@ -39,16 +42,16 @@ class FriendsServiceImpl implements FriendsService {
     @Transactional
     public void addFriend(String requester, String target, Language language) {
         if (!userService.existsByUsername(target)) {
-            sendError(messagingTemplate, requester, cannotFindRequestedUsers(language));
+            sendError(messageSender, requester, cannotFindRequestedUsers(language));
             return;
         }
         if (isFriendOrInProgress(target, requester)
                 || isFriendOrInProgress(requester, target)) {
-            sendError(messagingTemplate, requester, alreadyAFriendOrInProgress(language));
+            sendError(messageSender, requester, alreadyAFriendOrInProgress(language));
             return;
         }
         if (requester.equals(target)) {
-            sendError(messagingTemplate, requester, cannotBeYourOwnFriend(language));
+            sendError(messageSender, requester, cannotBeYourOwnFriend(language));
             return;
         }
         FriendshipEntity saved = friendshipRepository.save(FriendshipEntity.builder()
@@ -57,8 +60,7 @@ class FriendsServiceImpl implements FriendsService {
                 .pending(true)
                 .build()
         );
-        sendFriendshipNotification(requester, saved);
-        sendFriendshipNotification(target, saved);
+        sendFriendshipNotification(saved, requester, target);
     }
 
     @Override
@@ -77,17 +79,15 @@ class FriendsServiceImpl implements FriendsService {
         }
         friendshipRepository.delete(request);
         sendFriendshipDeletedNotification(request.getId(), request.getRequester(), request.getTarget());
-        sendError(messagingTemplate, request.getRequester(), request.getTarget() + " declined Your friend-request :(");
+        sendError(messageSender, request.getRequester(), request.getTarget() + " declined Your friend-request :(");
     }
 
     private void sendFriendshipDeletedNotification(Integer id, String... users) {
-        for (String user : users) {
-            messagingTemplate.convertAndSendToUser(user, DELETED_FRIENDS_TOPIC, id);
-        }
+        messageSender.sendToUsers(asList(users), DELETED_FRIENDS_TOPIC, id);
     }
 
-    private void sendFriendshipNotification(String user, FriendshipEntity entity) {
-        messagingTemplate.convertAndSendToUser(user, FRIENDS_TOPIC, map(entity));
+    private void sendFriendshipNotification(FriendshipEntity entity, String... users) {
+        messageSender.sendToUsers(asList(users), FRIENDS_TOPIC, map(entity));
     }
 
     private FriendshipEntity getFriendShipRequestOrThrow(Integer requestId, Language language) {
@@ -103,8 +103,7 @@ class FriendsServiceImpl implements FriendsService {
         request.setPending(false);
         friendshipRepository.save(request);
         sendFriendshipDeletedNotification(request.getId(), request.getTarget(), request.getRequester());
-        sendFriendshipNotification(request.getRequester(), request);
-        sendFriendshipNotification(request.getTarget(), request);
+        sendFriendshipNotification(request, request.getRequester(), request.getTarget());
     }
 
     private boolean isFriendOrInProgress(String requester, String target) {
@@ -112,11 +111,16 @@ class FriendsServiceImpl implements FriendsService {
     }
 
     private FriendshipResponse map(FriendshipEntity it) {
+        return map(it, null);
+    }
+
+    private FriendshipResponse map(FriendshipEntity it, Boolean online) {
         return FriendshipResponse.builder()
                 .pending(it.isPending())
                 .requester(it.getRequester())
                 .target(it.getTarget())
                 .id(it.getId())
+                .online(online)
                 .build();
     }
 }
\ No newline at end of file
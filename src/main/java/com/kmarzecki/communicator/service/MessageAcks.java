@@ -0,0 +1,25 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageAckResponse;
+
+import java.util.Optional;
+
+/**
+ * Recent acknowledgements of messages sent by users, kept in memory only to answer resent messages
+ */
+public interface MessageAcks {
+    /**
+     * Find the acknowledgement of a message already sent by a user
+     * @param username user username
+     * @param correlationId correlation id given by the user in the message request
+     * @return acknowledgement of the message, empty if the message is not known
+     */
+    Optional<MessageAckResponse> find(String username, String correlationId);
+
+    /**
+     * Remember the acknowledgement of a message sent by a user
+     * @param username user username
+     * @param ack acknowledgement carrying the correlation id of the message
+     */
+    void add(String username, MessageAckResponse ack);
+}
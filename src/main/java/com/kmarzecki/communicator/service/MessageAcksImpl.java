@@ -0,0 +1,59 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageAckResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Message acknowledgements keeping the most recent acknowledgements of every user in insertion ordered maps
+ * The oldest acknowledgement of a user is forgotten once the user exceeds the configured number,
+ * a message resent after that is stored again.
+ */
+@Component
+class MessageAcksImpl implements MessageAcks {
+    private final int acksPerUser;
+    private final Map<String, Map<String, MessageAckResponse>> acks = new ConcurrentHashMap<>();
+
+    MessageAcksImpl(MessageCacheProperties properties) {
+        this.acksPerUser = Math.max(1, properties.getAcksPerUser());
+    }
+
+    @Override
+    public Optional<MessageAckResponse> find(String username, String correlationId) {
+        Map<String, MessageAckResponse> userAcks = acks.get(username);
+        if (userAcks == null) {
+            return Optional.empty();
+        }
+        synchronized (userAcks) {
+            return Optional.ofNullable(userAcks.get(correlationId));
+        }
+    }
+
+    @Override
+    public void add(String username, MessageAckResponse ack) {
+        Map<String, MessageAckResponse> userAcks = acks.computeIfAbsent(username, user -> new UserAcks(acksPerUser));
+        synchronized (userAcks) {
+            userAcks.put(ack.getCorrelationId(), ack);
+        }
+    }
+
+    /**
+     * Acknowledgements of a single user, dropping the oldest one when full
+     */
+    private static class UserAcks extends LinkedHashMap<String, MessageAckResponse> {
+        private final int capacity;
+
+        private UserAcks(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MessageAckResponse> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.kmarzecki.communicator.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration of the recent message cache
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.messages.cache")
+@Getter
+@Setter
+public class MessageCacheProperties {
+    /**
+     * Number of most recent messages kept per channel
+     */
+    private int messagesPerChannel = 50;
+    /**
+     * Maximum number of cached channels
+     */
+    private int maxChannels = 10000;
+    /**
+     * Approximate upper bound of memory used by cached messages, in bytes
+     */
+    private long maxBytes = 64L * 1024 * 1024;
+    /**
+     * Number of most recent message acknowledgements kept per user to answer resent messages
+     */
+    private int acksPerUser = 100;
+}
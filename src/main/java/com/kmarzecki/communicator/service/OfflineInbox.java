@@ -0,0 +1,22 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.InboxResponse;
+
+/**
+ * Inbox of channels which received messages while their members were offline
+ */
+public interface OfflineInbox {
+    /**
+     * Remember that a channel received a message while a user was offline
+     * @param username user username
+     * @param channelId channel id
+     */
+    void add(String username, Integer channelId);
+
+    /**
+     * Take and clear the inbox of a user
+     * @param username user username
+     * @return channels which received messages since the inbox was last drained
+     */
+    InboxResponse drain(String username);
+}
@@ -0,0 +1,53 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.InboxResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offline inbox keeping only the ids of channels with new messages, up to a fixed number per user
+ * Channels beyond the capacity are not remembered, the inbox is then marked as truncated.
+ */
+@Component
+@AllArgsConstructor
+class OfflineInboxImpl implements OfflineInbox {
+    private final PresenceProperties properties;
+    private final Map<String, Inbox> inboxes = new ConcurrentHashMap<>();
+
+    @Override
+    public void add(String username, Integer channelId) {
+        inboxes.compute(username, (name, inbox) -> {
+            Inbox result = inbox != null ? inbox : new Inbox();
+            if (result.channelIds.size() < properties.getInboxCapacity()) {
+                result.channelIds.add(channelId);
+            } else if (!result.channelIds.contains(channelId)) {
+                result.truncated = true;
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public InboxResponse drain(String username) {
+        Inbox inbox = inboxes.remove(username);
+        if (inbox == null) {
+            return new InboxResponse(Collections.emptyList(), false);
+        }
+        return new InboxResponse(new ArrayList<>(inbox.channelIds), inbox.truncated);
+    }
+
+    /**
+     * Channels with new messages of a single user
+     */
+    private static class Inbox {
+        private final Set<Integer> channelIds = new LinkedHashSet<>();
+        private boolean truncated;
+    }
+}
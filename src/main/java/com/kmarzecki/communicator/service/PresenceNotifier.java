@@ -0,0 +1,79 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.friends.PresenceResponse;
+import com.kmarzecki.communicator.repository.FriendshipRepository;
+import com.kmarzecki.communicator.util.MessageSender;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import javax.annotation.PreDestroy;
+import java.security.Principal;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.kmarzecki.communicator.util.MessageUtils.PRESENCE_TOPIC;
+
+/**
+ * Broadcaster of presence changes to accepted friends
+ * A change is sent after the broadcast delay with the presence the user has at that time, so reconnecting
+ * clients and users opening several sessions do not produce a broadcast per session event.
+ */
+@Slf4j
+@Component
+class PresenceNotifier {
+    private final PresenceRegistry presenceRegistry;
+    private final FriendshipRepository friendshipRepository;
+    private final MessageSender messageSender;
+    private final long broadcastDelay;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<String> announcedOnline = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("presence-broadcast-"));
+
+    PresenceNotifier(PresenceRegistry presenceRegistry,
+                     FriendshipRepository friendshipRepository,
+                     MessageSender messageSender,
+                     PresenceProperties properties) {
+        this.presenceRegistry = presenceRegistry;
+        this.friendshipRepository = friendshipRepository;
+        this.messageSender = messageSender;
+        this.broadcastDelay = properties.getBroadcastDelay().toMillis();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @EventListener({SessionConnectedEvent.class, SessionDisconnectEvent.class})
+    public void onSessionEvent(AbstractSubProtocolEvent event) {
+        Principal user = event.getUser();
+        if (user != null && pending.add(user.getName())) {
+            scheduler.schedule(() -> broadcast(user.getName()), broadcastDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void broadcast(String username) {
+        pending.remove(username);
+        boolean online = presenceRegistry.isOnline(username);
+        boolean changed = online ? announcedOnline.add(username) : announcedOnline.remove(username);
+        if (!changed) {
+            return;
+        }
+        try {
+            List<String> friends = friendshipRepository.findFriendUsernames(username);
+            messageSender.sendDroppableToUsers(friends, PRESENCE_TOPIC, new PresenceResponse(username, online));
+        } catch (RuntimeException e) {
+            log.warn("Failed to broadcast presence of {}", username, e);
+        }
+    }
+}
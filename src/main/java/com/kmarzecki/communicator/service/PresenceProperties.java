@@ -0,0 +1,26 @@
+package com.kmarzecki.communicator.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of presence broadcasts and offline inboxes
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.presence")
+@Getter
+@Setter
+public class PresenceProperties {
+    /**
+     * Time a presence change waits before it is broadcast to friends, changes of a user within it are sent once
+     */
+    private Duration broadcastDelay = Duration.ofSeconds(2);
+    /**
+     * Maximum number of channels with new messages remembered for an offline user
+     */
+    private int inboxCapacity = 100;
+}
@@ -0,0 +1,19 @@
+package com.kmarzecki.communicator.service;
+
+/**
+ * Registry of users with open websocket sessions
+ */
+public interface PresenceRegistry {
+    /**
+     * Check if a user has an open websocket session
+     * @param username user username
+     * @return whether the user is online
+     */
+    boolean isOnline(String username);
+
+    /**
+     * @param username user username
+     * @return number of open websocket sessions of the user
+     */
+    int getSessionCount(String username);
+}
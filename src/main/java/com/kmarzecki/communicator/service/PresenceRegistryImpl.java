@@ -0,0 +1,70 @@
+package com.kmarzecki.communicator.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Presence registry fed by websocket session events, keeping the ids of open sessions of every online user
+ * A user is online from the first connected session until the last one is closed.
+ */
+@Component
+class PresenceRegistryImpl implements PresenceRegistry {
+    private final Map<String, Set<String>> sessions = new ConcurrentHashMap<>();
+
+    PresenceRegistryImpl(MeterRegistry meterRegistry) {
+        Gauge.builder("communicator.presence.online", sessions, Map::size)
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user == null || sessionId == null) {
+            return;
+        }
+        sessions.compute(user.getName(), (username, userSessions) -> {
+            Set<String> result = userSessions != null ? userSessions : new HashSet<>();
+            result.add(sessionId);
+            return result;
+        });
+    }
+
+    @EventListener
+    public void onDisconnected(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        sessions.computeIfPresent(user.getName(), (username, userSessions) -> {
+            userSessions.remove(event.getSessionId());
+            return userSessions.isEmpty() ? null : userSessions;
+        });
+    }
+
+    @Override
+    public boolean isOnline(String username) {
+        return sessions.containsKey(username);
+    }
+
+    @Override
+    public int getSessionCount(String username) {
+        int[] count = new int[1];
+        sessions.computeIfPresent(username, (name, userSessions) -> {
+            count[0] = userSessions.size();
+            return userSessions;
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,26 @@
+package com.kmarzecki.communicator.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of read markers and unread message counters
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.messages.read-markers")
+@Getter
+@Setter
+public class ReadMarkerProperties {
+    /**
+     * Interval in which moved read markers are written to the database
+     */
+    private Duration flushInterval = Duration.ofSeconds(5);
+    /**
+     * Maximum unread message count of a channel, larger counts are capped
+     */
+    private int maxUnreadCount = 999;
+}
@@ -0,0 +1,37 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import com.kmarzecki.communicator.model.conversation.UnreadResponse;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read markers and unread message counters of users in conversation channels, kept in memory
+ */
+public interface ReadState {
+    /**
+     * Count a new message as unread for the members of its channel other than its author
+     * @param message sent message
+     * @param members usernames of the channel members
+     */
+    void messageSent(MessageResponse message, Collection<String> members);
+
+    /**
+     * Get read state of channels of a user
+     * @param username user username
+     * @param channelIds channel ids
+     * @return map of channel ids to their read state
+     */
+    Map<Integer, UnreadResponse> getReadState(String username, Collection<Integer> channelIds);
+
+    /**
+     * Move the read marker of a user in a channel forward
+     * @param username user username
+     * @param channelId channel id
+     * @param messageId id of the last read message
+     * @return new read state of the channel, empty if the marker has not moved
+     */
+    Optional<UnreadResponse> markRead(String username, Integer channelId, Integer messageId);
+}
@@ -0,0 +1,248 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import com.kmarzecki.communicator.model.conversation.ReadMarkerEntity;
+import com.kmarzecki.communicator.model.conversation.ReadMarkerId;
+import com.kmarzecki.communicator.model.conversation.UnreadResponse;
+import com.kmarzecki.communicator.repository.MessageStore;
+import com.kmarzecki.communicator.repository.ReadMarkerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Read state loading the read marker and unread count of a user in a channel once, then maintaining them in memory
+ * while the user is online. Counters of a user are dropped after the last session of the user has been closed,
+ * read state of offline users is computed without being kept.
+ * Unread counters are striped, so messages to busy channels do not contend on them. Moved read markers are
+ * written in batches on a background thread, a burst of reads of a channel results in a single write.
+ * Markers waiting to be written take precedence over the stored ones.
+ * Counters loaded while a message is being sent may miss it until the user reads the channel again.
+ */
+@Slf4j
+@Component
+class ReadStateImpl implements ReadState {
+    private final ReadMarkerProperties properties;
+    private final ReadMarkerRepository readMarkerRepository;
+    private final MessageStore messageStore;
+    private final RecentMessageCache recentMessages;
+    private final PresenceRegistry presenceRegistry;
+    private final Map<String, Map<Integer, Counter>> counters = new ConcurrentHashMap<>();
+    private final Map<ReadMarkerId, Integer> moved = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushExecutor =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("read-marker-flush-"));
+
+    ReadStateImpl(ReadMarkerProperties properties,
+                  ReadMarkerRepository readMarkerRepository,
+                  MessageStore messageStore,
+                  RecentMessageCache recentMessages,
+                  PresenceRegistry presenceRegistry) {
+        this.properties = properties;
+        this.readMarkerRepository = readMarkerRepository;
+        this.messageStore = messageStore;
+        this.recentMessages = recentMessages;
+        this.presenceRegistry = presenceRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        long interval = properties.getFlushInterval().toMillis();
+        flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(properties.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * Drop counters of a user who has no open session left
+     * Presence is checked after the flush interval, once the presence registry has seen the disconnect as well.
+     */
+    @EventListener
+    public void onDisconnected(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        String username = user.getName();
+        flushExecutor.schedule(() -> {
+            if (!presenceRegistry.isOnline(username)) {
+                counters.remove(username);
+            }
+        }, properties.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void messageSent(MessageResponse message, Collection<String> members) {
+        for (String member : members) {
+            if (member.equals(message.getUsername())) {
+                continue;
+            }
+            Map<Integer, Counter> userCounters = counters.get(member);
+            Counter counter = userCounters == null ? null : userCounters.get(message.getChannelId());
+            if (counter != null) {
+                counter.unread.increment();
+            }
+        }
+    }
+
+    @Override
+    public Map<Integer, UnreadResponse> getReadState(String username, Collection<Integer> channelIds) {
+        Map<Integer, Counter> userCounters = countersOf(username);
+        List<Integer> missing = channelIds.stream()
+                .filter(channelId -> !userCounters.containsKey(channelId))
+                .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            load(username, missing, userCounters);
+        }
+        Map<Integer, UnreadResponse> result = new HashMap<>();
+        for (Integer channelId : channelIds) {
+            result.put(channelId, userCounters.get(channelId).toResponse(channelId));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<UnreadResponse> markRead(String username, Integer channelId, Integer messageId) {
+        Counter counter = countersOf(username).computeIfAbsent(channelId, id -> load(username, id));
+        UnreadResponse response;
+        synchronized (counter) {
+            if (messageId <= counter.lastRead) {
+                return Optional.empty();
+            }
+            counter.lastRead = messageId;
+            counter.unread.reset();
+            counter.unread.add(countAfter(username, channelId, messageId));
+            moved.merge(new ReadMarkerId(username, channelId), messageId, Math::max);
+            response = counter.toResponse(channelId);
+        }
+        return Optional.of(response);
+    }
+
+    /**
+     * @return counters of a user, kept only while the user is online
+     */
+    private Map<Integer, Counter> countersOf(String username) {
+        Map<Integer, Counter> userCounters = counters.get(username);
+        if (userCounters != null) {
+            return userCounters;
+        }
+        return presenceRegistry.isOnline(username)
+                ? counters.computeIfAbsent(username, name -> new ConcurrentHashMap<>())
+                : new HashMap<>();
+    }
+
+    private Counter load(String username, Integer channelId) {
+        int lastRead = readMarkerRepository.findById(new ReadMarkerId(username, channelId))
+                .map(ReadMarkerEntity::getLastReadMessageId)
+                .orElse(0);
+        lastRead = Math.max(lastRead, pendingMarker(username, channelId));
+        return new Counter(lastRead, countAfter(username, channelId, lastRead));
+    }
+
+    /**
+     * Load counters of many channels, counting unread messages not held by the cache in a single store query
+     */
+    private void load(String username, List<Integer> channelIds, Map<Integer, Counter> userCounters) {
+        Map<Integer, Integer> markers = readMarkerRepository.findAllByUsername(username).stream()
+                .collect(Collectors.toMap(ReadMarkerEntity::getChannelId, ReadMarkerEntity::getLastReadMessageId));
+        int max = properties.getMaxUnreadCount();
+        Map<Integer, Integer> unread = new HashMap<>();
+        Map<Integer, Integer> uncached = new HashMap<>();
+        for (Integer channelId : channelIds) {
+            int lastRead = Math.max(markers.getOrDefault(channelId, 0), pendingMarker(username, channelId));
+            markers.put(channelId, lastRead);
+            Optional<Integer> cached = countCached(username, channelId, lastRead);
+            if (cached.isPresent()) {
+                unread.put(channelId, cached.get());
+            } else {
+                uncached.put(channelId, lastRead);
+            }
+        }
+        unread.putAll(messageStore.countAfter(uncached, username, max));
+        for (Integer channelId : channelIds) {
+            userCounters.computeIfAbsent(channelId, id -> new Counter(markers.get(id), unread.getOrDefault(id, 0)));
+        }
+    }
+
+    private int pendingMarker(String username, Integer channelId) {
+        return moved.getOrDefault(new ReadMarkerId(username, channelId), 0);
+    }
+
+    /**
+     * @return number of messages after a message, not counting the messages of the user
+     */
+    private int countAfter(String username, Integer channelId, int messageId) {
+        return countCached(username, channelId, messageId)
+                .orElseGet(() -> messageStore.countAfter(channelId, messageId, username, properties.getMaxUnreadCount()));
+    }
+
+    /**
+     * @return number of messages after a message, not counting the messages of the user, empty if the cache cannot tell
+     */
+    private Optional<Integer> countCached(String username, Integer channelId, int messageId) {
+        int max = properties.getMaxUnreadCount();
+        return recentMessages.getAfter(channelId, messageId)
+                .map(messages -> (int) Math.min(messages.stream().filter(message -> !username.equals(message.getUsername())).count(), max));
+    }
+
+    private void flush() {
+        List<ReadMarkerEntity> batch = new ArrayList<>();
+        moved.forEach((key, lastRead) -> batch.add(new ReadMarkerEntity(key.getUsername(), key.getChannelId(), lastRead)));
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            readMarkerRepository.upsertAll(batch);
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} read markers, retrying with the next batch", batch.size(), e);
+            return;
+        }
+        for (ReadMarkerEntity marker : batch) {
+            // keep markers moved again since the batch was taken
+            moved.remove(new ReadMarkerId(marker.getUsername(), marker.getChannelId()), marker.getLastReadMessageId());
+        }
+    }
+
+    /**
+     * Read marker and unread message counter of a user in a channel
+     */
+    private class Counter {
+        private final LongAdder unread = new LongAdder();
+        private volatile int lastRead;
+
+        private Counter(int lastRead, int unread) {
+            this.lastRead = lastRead;
+            this.unread.add(unread);
+        }
+
+        private UnreadResponse toResponse(Integer channelId) {
+            return UnreadResponse.builder()
+                    .channelId(channelId)
+                    .lastReadMessageId(lastRead)
+                    .unreadCount((int) Math.min(unread.sum(), properties.getMaxUnreadCount()))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Cache of the most recent messages of conversation channels
+ */
+public interface RecentMessageCache {
+    /**
+     * Add a newly sent message
+     * @param message sent message
+     */
+    void add(MessageResponse message);
+
+    /**
+     * Fill the cache of a channel with messages loaded from storage
+     * @param channelId channel id
+     * @param newestFirst latest messages of the channel, newest first
+     * @param complete whether the messages are the whole history of the channel
+     */
+    void fill(Integer channelId, List<MessageResponse> newestFirst, boolean complete);
+
+    /**
+     * Get the latest messages of a channel
+     * @param channelId channel id
+     * @param limit number of messages
+     * @return latest messages, newest first, empty if the cache cannot answer without storage
+     */
+    Optional<List<MessageResponse>> getLatest(Integer channelId, int limit);
+
+    /**
+     * Get messages of a channel sent after a message
+     * @param channelId channel id
+     * @param messageId id of the message
+     * @return messages with greater ids, oldest first, empty if the cache does not reach back to the message
+     */
+    Optional<List<MessageResponse>> getAfter(Integer channelId, Integer messageId);
+}
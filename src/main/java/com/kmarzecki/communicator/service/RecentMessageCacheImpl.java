@@ -0,0 +1,251 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a ring buffer of recent messages per channel, ordered by id.
+ * Every channel buffer has its own lock, so channels are read and written independently.
+ * Ids are assigned before messages reach the cache, so concurrent senders may add them out of order,
+ * a message is inserted at its id position to keep reads after an id complete.
+ * Channels are evicted in least recently used order once the channel count or the estimated size exceeds its limit,
+ * down to nine tenths of the limits so the scan for eviction candidates is amortised over many additions.
+ */
+@Component
+class RecentMessageCacheImpl implements RecentMessageCache {
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+    private static final double EVICTION_TARGET = 0.9;
+
+    private final MessageCacheProperties properties;
+    private final Map<Integer, ChannelBuffer> channels = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    RecentMessageCacheImpl(MessageCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void add(MessageResponse message) {
+        while (true) {
+            ChannelBuffer buffer = buffer(message.getChannelId());
+            synchronized (buffer) {
+                if (!buffer.evicted) {
+                    buffer.insert(message);
+                    break;
+                }
+            }
+        }
+        evictIfNeeded();
+    }
+
+    @Override
+    public void fill(Integer channelId, List<MessageResponse> newestFirst, boolean complete) {
+        while (true) {
+            ChannelBuffer buffer = buffer(channelId);
+            synchronized (buffer) {
+                if (!buffer.evicted) {
+                    buffer.merge(newestFirst, complete);
+                    break;
+                }
+            }
+        }
+        evictIfNeeded();
+    }
+
+    @Override
+    public Optional<List<MessageResponse>> getLatest(Integer channelId, int limit) {
+        ChannelBuffer buffer = channels.get(channelId);
+        if (buffer == null) {
+            return Optional.empty();
+        }
+        buffer.touch();
+        synchronized (buffer) {
+            if (buffer.size < limit && !buffer.complete) {
+                return Optional.empty();
+            }
+            return Optional.of(buffer.newestFirst(limit));
+        }
+    }
+
+    @Override
+    public Optional<List<MessageResponse>> getAfter(Integer channelId, Integer messageId) {
+        ChannelBuffer buffer = channels.get(channelId);
+        if (buffer == null) {
+            return Optional.empty();
+        }
+        buffer.touch();
+        synchronized (buffer) {
+            if (!buffer.complete && (buffer.size == 0 || buffer.oldest().getId() > messageId)) {
+                return Optional.empty();
+            }
+            List<MessageResponse> result = new ArrayList<>();
+            for (int i = 1; i <= buffer.size; i++) {
+                MessageResponse message = buffer.get(buffer.size - i);
+                if (message.getId() <= messageId) {
+                    break;
+                }
+                result.add(message);
+            }
+            Collections.reverse(result);
+            return Optional.of(result);
+        }
+    }
+
+    private ChannelBuffer buffer(Integer channelId) {
+        ChannelBuffer buffer = channels.computeIfAbsent(channelId, id -> new ChannelBuffer(properties.getMessagesPerChannel()));
+        buffer.touch();
+        return buffer;
+    }
+
+    private void evictIfNeeded() {
+        if (!overLimits(1) || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            if (!overLimits(1)) {
+                return;
+            }
+            List<long[]> candidates = new ArrayList<>(channels.size());
+            channels.forEach((channelId, buffer) -> candidates.add(new long[]{buffer.lastAccess, channelId}));
+            candidates.sort(Comparator.comparingLong(candidate -> candidate[0]));
+            for (long[] eldest : candidates) {
+                if (!overLimits(EVICTION_TARGET)) {
+                    return;
+                }
+                Integer channelId = (int) eldest[1];
+                ChannelBuffer buffer = channels.get(channelId);
+                if (buffer != null && channels.remove(channelId, buffer)) {
+                    synchronized (buffer) {
+                        buffer.evicted = true;
+                        buffer.clear();
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean overLimits(double fraction) {
+        return totalBytes.get() > properties.getMaxBytes() * fraction
+                || channels.size() > properties.getMaxChannels() * fraction;
+    }
+
+    private static long sizeOf(MessageResponse message) {
+        return MESSAGE_OVERHEAD_BYTES + 2L * (message.getPayload().length() + message.getUsername().length());
+    }
+
+    /**
+     * Fixed size ring buffer of messages of a single channel, oldest first, guarded by its own monitor
+     */
+    private class ChannelBuffer {
+        private final MessageResponse[] messages;
+        private int head;
+        private int size;
+        private long bytes;
+        private volatile long lastAccess;
+        /**
+         * Whether the buffer holds the whole history of the channel
+         */
+        private boolean complete;
+        /**
+         * Whether the buffer has been removed from the cache, writers then retry with a new buffer
+         */
+        private boolean evicted;
+
+        ChannelBuffer(int capacity) {
+            this.messages = new MessageResponse[capacity];
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        MessageResponse oldest() {
+            return messages[head];
+        }
+
+        /**
+         * @return message at a position counted from the oldest one
+         */
+        MessageResponse get(int index) {
+            return messages[(head + index) % messages.length];
+        }
+
+        /**
+         * Insert a message at its id position, dropping the oldest message of a full buffer
+         * A message older than every message of a full buffer is not kept.
+         */
+        void insert(MessageResponse message) {
+            int position = size;
+            while (position > 0 && get(position - 1).getId() > message.getId()) {
+                position--;
+            }
+            if (position > 0 && get(position - 1).getId().equals(message.getId())) {
+                return;
+            }
+            if (size == messages.length) {
+                if (position == 0) {
+                    complete = false;
+                    return;
+                }
+                resize(-sizeOf(messages[head]));
+                messages[head] = null;
+                head = (head + 1) % messages.length;
+                size--;
+                position--;
+                complete = false;
+            }
+            for (int i = size; i > position; i--) {
+                messages[(head + i) % messages.length] = get(i - 1);
+            }
+            messages[(head + position) % messages.length] = message;
+            size++;
+            resize(sizeOf(message));
+        }
+
+        void merge(List<MessageResponse> newestFirst, boolean complete) {
+            List<MessageResponse> merged = new ArrayList<>(newestFirst);
+            merged.addAll(newestFirst(size));
+            merged.sort(Comparator.comparing(MessageResponse::getId));
+            clear();
+            for (MessageResponse message : merged) {
+                insert(message);
+            }
+            this.complete = complete && merged.size() <= messages.length;
+        }
+
+        List<MessageResponse> newestFirst(int limit) {
+            int count = Math.min(limit, size);
+            List<MessageResponse> result = new ArrayList<>(count);
+            for (int i = 1; i <= count; i++) {
+                result.add(get(size - i));
+            }
+            return result;
+        }
+
+        void clear() {
+            resize(-bytes);
+            Arrays.fill(messages, null);
+            head = 0;
+            size = 0;
+        }
+
+        private void resize(long delta) {
+            bytes += delta;
+            totalBytes.addAndGet(delta);
+        }
+    }
+}
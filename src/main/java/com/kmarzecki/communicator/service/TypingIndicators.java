@@ -0,0 +1,20 @@
+package com.kmarzecki.communicator.service;
+
+/**
+ * Typing state of users in conversation channels, kept in memory only
+ */
+public interface TypingIndicators {
+    /**
+     * Record that a user is typing in a channel
+     * @param username user username
+     * @param channelId channel id
+     */
+    void typing(String username, Integer channelId);
+
+    /**
+     * Record that a user stopped typing in a channel, because the user sent a message
+     * @param username user username
+     * @param channelId channel id
+     */
+    void stopped(String username, Integer channelId);
+}
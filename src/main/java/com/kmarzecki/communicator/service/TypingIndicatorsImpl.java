@@ -0,0 +1,115 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.TypingResponse;
+import com.kmarzecki.communicator.util.MessageSender;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.kmarzecki.communicator.util.MessageUtils.typingTopic;
+
+/**
+ * Typing indicators keeping the expiry time of every typing user per channel in concurrent maps
+ * Repeated typing events of a user only move the expiry time. When the set of typing users may have changed,
+ * a single snapshot of the channel is scheduled, so a channel is broadcast at most once per broadcast interval.
+ * Snapshots are sent as droppable messages, clients which cannot keep up only get the latest one.
+ * A channel is forgotten once its empty snapshot has been sent, typists are added under the map entry lock
+ * so none is added to a channel which is being removed.
+ */
+@Component
+class TypingIndicatorsImpl implements TypingIndicators {
+    private final MessageSender messageSender;
+    private final long expiry;
+    private final long broadcastInterval;
+    private final Map<Integer, ChannelTyping> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("typing-broadcast-"));
+
+    TypingIndicatorsImpl(MessageSender messageSender, TypingProperties properties) {
+        this.messageSender = messageSender;
+        this.expiry = properties.getExpiry().toNanos();
+        this.broadcastInterval = properties.getBroadcastInterval().toMillis();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Override
+    public void typing(String username, Integer channelId) {
+        long expiresAt = System.nanoTime() + expiry;
+        AtomicBoolean added = new AtomicBoolean();
+        ChannelTyping channel = channels.compute(channelId, (id, existing) -> {
+            ChannelTyping typing = existing == null ? new ChannelTyping(id) : existing;
+            added.set(typing.typists.put(username, expiresAt) == null);
+            return typing;
+        });
+        if (added.get()) {
+            schedule(channel);
+        }
+    }
+
+    @Override
+    public void stopped(String username, Integer channelId) {
+        ChannelTyping channel = channels.get(channelId);
+        if (channel != null && channel.typists.remove(username) != null) {
+            schedule(channel);
+        }
+    }
+
+    /**
+     * @return number of channels with typing state
+     */
+    int channelCount() {
+        return channels.size();
+    }
+
+    private void schedule(ChannelTyping channel) {
+        if (channel.scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> broadcast(channel), broadcastInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void broadcast(ChannelTyping channel) {
+        channel.scheduled.set(false);
+        long now = System.nanoTime();
+        channel.typists.entrySet().removeIf(typist -> typist.getValue() - now <= 0);
+        List<String> usernames = new ArrayList<>(channel.typists.keySet());
+        Collections.sort(usernames);
+        if (!usernames.equals(channel.lastSent)) {
+            channel.lastSent = usernames;
+            messageSender.sendDroppable(typingTopic(channel.channelId), new TypingResponse(channel.channelId, usernames));
+        }
+        if (!usernames.isEmpty()) {
+            // check again for expired typists
+            schedule(channel);
+        } else {
+            channels.computeIfPresent(channel.channelId, (id, typing) -> typing == channel && typing.typists.isEmpty() ? null : typing);
+        }
+    }
+
+    /**
+     * Users typing in a single channel
+     */
+    private static class ChannelTyping {
+        private final Integer channelId;
+        private final Map<String, Long> typists = new ConcurrentHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private List<String> lastSent = Collections.emptyList();
+
+        private ChannelTyping(Integer channelId) {
+            this.channelId = channelId;
+        }
+    }
+}
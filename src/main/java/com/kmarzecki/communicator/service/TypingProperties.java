@@ -0,0 +1,26 @@
+package com.kmarzecki.communicator.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of typing indicators
+ */
+@Component
+@ConfigurationProperties(prefix = "communicator.typing")
+@Getter
+@Setter
+public class TypingProperties {
+    /**
+     * Time after the last typing event of a user for which the user is shown as typing
+     */
+    private Duration expiry = Duration.ofSeconds(5);
+    /**
+     * Minimum time between two snapshots of users typing in a channel
+     */
+    private Duration broadcastInterval = Duration.ofMillis(500);
+}
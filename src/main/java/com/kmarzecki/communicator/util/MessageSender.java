@@ -0,0 +1,51 @@
+package com.kmarzecki.communicator.util;
+
+import java.util.Collection;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Sender of websocket messages
+ * Encodes a payload once per event and reuses the encoded message for every recipient
+ */
+public interface MessageSender {
+    /**
+     * Send a payload to a broker destination
+     * @param destination broker destination
+     * @param payload payload to send
+     */
+    void send(String destination, Object payload);
+
+    /**
+     * Send a payload to a user destination of every user
+     * @param users target users
+     * @param destination user destination
+     * @param payload payload to send
+     */
+    void sendToUsers(Collection<String> users, String destination, Object payload);
+
+    /**
+     * Send a payload to a user destination
+     * @param user target user
+     * @param destination user destination
+     * @param payload payload to send
+     */
+    default void sendToUser(String user, String destination, Object payload) {
+        sendToUsers(singletonList(user), destination, payload);
+    }
+
+    /**
+     * Send a payload to a broker destination, marked as droppable for clients which cannot keep up
+     * @param destination broker destination
+     * @param payload payload to send
+     */
+    void sendDroppable(String destination, Object payload);
+
+    /**
+     * Send a payload to a user destination of every user, marked as droppable for clients which cannot keep up
+     * @param users target users
+     * @param destination user destination
+     * @param payload payload to send
+     */
+    void sendDroppableToUsers(Collection<String> users, String destination, Object payload);
+}
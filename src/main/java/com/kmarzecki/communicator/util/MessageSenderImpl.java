@@ -0,0 +1,88 @@
+package com.kmarzecki.communicator.util;
+
+import com.kmarzecki.communicator.service.PresenceRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+
+import static com.kmarzecki.communicator.util.MessageUtils.DROPPABLE_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.SOURCE_PAYLOAD_HEADER;
+
+@Component
+@AllArgsConstructor
+class MessageSenderImpl implements MessageSender {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceRegistry presenceRegistry;
+
+    @Override
+    public void send(String destination, Object payload) {
+        messagingTemplate.send(destination, encode(payload, false));
+    }
+
+    @Override
+    public void sendToUsers(Collection<String> users, String destination, Object payload) {
+        sendToUsers(users, destination, payload, false);
+    }
+
+    @Override
+    public void sendDroppable(String destination, Object payload) {
+        messagingTemplate.send(destination, encode(payload, true));
+    }
+
+    @Override
+    public void sendDroppableToUsers(Collection<String> users, String destination, Object payload) {
+        sendToUsers(users, destination, payload, true);
+    }
+
+    /**
+     * Sends only to users with open sessions, the broker would discard messages to the others
+     */
+    private void sendToUsers(Collection<String> users, String destination, Object payload, boolean droppable) {
+        Message<?> message = null;
+        for (String user : users) {
+            if (!presenceRegistry.isOnline(user)) {
+                continue;
+            }
+            if (message == null) {
+                message = encode(payload, droppable);
+            }
+            messagingTemplate.send(userDestination(user, destination), message);
+        }
+    }
+
+    /**
+     * Keeps the payload object in the headers, so outbound interceptors can encode it in another format
+     * without parsing the JSON bytes
+     */
+    private static MessageHeaders headers(Object payload, boolean droppable) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        if (droppable) {
+            accessor.setNativeHeader(DROPPABLE_HEADER, Boolean.TRUE.toString());
+        }
+        accessor.setHeader(SOURCE_PAYLOAD_HEADER, payload);
+        return accessor.getMessageHeaders();
+    }
+
+    /**
+     * Runs the broker message converter once, the template copies only the headers
+     * of the encoded message for each destination and shares the payload bytes
+     */
+    private Message<?> encode(Object payload, boolean droppable) {
+        Message<?> message = messagingTemplate.getMessageConverter().toMessage(payload, headers(payload, droppable));
+        if (message == null) {
+            throw new MessageConversionException("Unable to convert payload of type " + payload.getClass().getName());
+        }
+        return message;
+    }
+
+    private String userDestination(String user, String destination) {
+        return messagingTemplate.getUserDestinationPrefix() + StringUtils.replace(user, "/", "%2F") + destination;
+    }
+}
@@ -1,6 +1,13 @@
 package com.kmarzecki.communicator.util;
 
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Messaging utility functions and constants
@@ -8,17 +15,112 @@ import org.springframework.messaging.simp.SimpMessageSendingOperations;
 public class MessageUtils {
     public static final String FRIENDS_TOPIC = "/topic/friends";
     public static final String CHANNELS_TOPIC = "/topic/channels";
+    public static final String CHANNEL_LIST_TOPIC = "/topic/channel_list";
     public static final String MESSAGES_TOPIC = "/topic/messages";
+    public static final String MESSAGE_ACK_TOPIC = "/topic/message_ack";
     public static final String PREVIOUS_MESSAGES_TOPIC = "/topic/previous_messages";
+    public static final String MESSAGE_RANGE_TOPIC = "/topic/message_range";
+    public static final String SYNC_TOPIC = "/topic/sync";
+    public static final String UNREAD_TOPIC = "/topic/unread";
+    public static final String INBOX_TOPIC = "/topic/inbox";
+    public static final String PRESENCE_TOPIC = "/topic/presence";
     public static final String DELETED_FRIENDS_TOPIC = "/topic/deleted_friends";
     public static final String NOTIFICATION_TOPIC = "/topic/notification";
+    public static final String CHANNEL_TOPIC_PREFIX = "/topic/channel/";
+    public static final String TYPING_SUFFIX = "/typing";
+    /**
+     * STOMP header marking frames which may be dropped or coalesced when a client cannot keep up
+     */
+    public static final String DROPPABLE_HEADER = "droppable";
+    /**
+     * CONNECT header with which a client asks for messages to be coalesced into batches
+     */
+    public static final String COALESCE_HEADER = "coalesce";
+    /**
+     * STOMP header holding the number of payloads of a coalesced frame, whose body is a JSON array
+     */
+    public static final String BATCH_HEADER = "batch";
+    /**
+     * CONNECT header with which a client over a raw websocket picks the encoding of payloads sent to it, json or cbor
+     */
+    public static final String PAYLOAD_FORMAT_HEADER = "payload-format";
+    /**
+     * Message header holding the object a payload has been encoded from, so it can be encoded in another format
+     */
+    public static final String SOURCE_PAYLOAD_HEADER = "communicatorSourcePayload";
+
+    private static final Pattern CHANNEL_DESTINATION = Pattern.compile(
+            Pattern.quote(CHANNEL_TOPIC_PREFIX) + "(\\d+)(" + Pattern.quote(TYPING_SUFFIX) + ")?");
+
+    /**
+     * @param channelId id of the conversation channel
+     * @return broker destination to which messages of the channel are published
+     */
+    public static String channelTopic(Integer channelId) {
+        return CHANNEL_TOPIC_PREFIX + channelId;
+    }
+
+    /**
+     * @param channelId id of the conversation channel
+     * @return broker destination to which users typing in the channel are published
+     */
+    public static String typingTopic(Integer channelId) {
+        return channelTopic(channelId) + TYPING_SUFFIX;
+    }
+
+    /**
+     * Extract the channel id from a channel topic destination
+     * Only the message topic and the typing topic of a channel are recognised.
+     * @param destination broker destination
+     * @return channel id, empty if the destination is not exactly one of the topics of a channel
+     */
+    public static Optional<Integer> channelIdOf(String destination) {
+        if (destination == null) {
+            return Optional.empty();
+        }
+        Matcher matcher = CHANNEL_DESTINATION.matcher(destination);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Integer.valueOf(matcher.group(1)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The simple broker matches subscriptions as Ant patterns, which ignore empty path segments,
+     * so such a destination could subscribe to topics it does not name
+     * @param destination subscription destination
+     * @return whether the destination holds wildcards, template variables or empty segments
+     */
+    public static boolean isPatternDestination(String destination) {
+        return destination.indexOf('*') >= 0
+                || destination.indexOf('?') >= 0
+                || destination.indexOf('{') >= 0
+                || destination.contains("//");
+    }
+
+    /**
+     * @param message message encoded by the broker message converter
+     * @return whether the payload of the message holds JSON bytes
+     */
+    public static boolean isJsonPayload(Message<?> message) {
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        if (contentType == null || !(message.getPayload() instanceof byte[])) {
+            return false;
+        }
+        MimeType mimeType = contentType instanceof MimeType ? (MimeType) contentType : MimeType.valueOf(contentType.toString());
+        return MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(mimeType);
+    }
 
     /**
-     * @param template Messaging template
+     * @param sender Message sender
      * @param user target user
      * @param error error string
      */
-    public static void sendError(SimpMessageSendingOperations template, String user, String error) {
-        template.convertAndSendToUser(user, NOTIFICATION_TOPIC, error);
+    public static void sendError(MessageSender sender, String user, String error) {
+        sender.sendToUser(user, NOTIFICATION_TOPIC, error);
     }
 }
@@ -81,6 +81,9 @@ port gotPreviousMessage : (E.Value -> msg) -> Sub msg
 port clearMessageInput : () -> Cmd msg
 
 
+port sendMessageWs : E.Value -> Cmd msg
+
+
 showSnackbar : String -> Cmd msg
 showSnackbar s =
     showSnackbarOut (E.string s)
@@ -151,14 +154,8 @@ respondToFriendRequest id response model =
 
 
 sendMessage : String -> ChannelId -> Model -> Cmd Msg
-sendMessage message channelId model =
-    authedPost
-        { model = model
-        , url = "/conversation/message"
-        , expect = Http.expectWhatever NoOp
-        , params = []
-        , body = Http.jsonBody (Messages.encodeSendMessageRequest message channelId)
-        }
+sendMessage message channelId _ =
+    sendMessageWs (Messages.encodeSendMessageRequest message channelId)
 
 
 authedRequest :
@@ -7,14 +7,16 @@ import Json.Encode as E
 type alias User =
     { username : String
     , token : String
+    , refreshToken : Maybe String
     }
 
 
 userDecoder : Decoder User
 userDecoder =
-    Json.Decode.map2 User
+    Json.Decode.map3 User
         (Json.Decode.field "username" Json.Decode.string)
         (Json.Decode.field "token" Json.Decode.string)
+        (Json.Decode.maybe (Json.Decode.field "refreshToken" Json.Decode.string))
 
 
 encodeUser : User -> E.Value
@@ -22,4 +24,5 @@ encodeUser user =
     E.object
         [ ( "username", E.string user.username )
         , ( "token", E.string user.token )
+        , ( "refreshToken", Maybe.withDefault E.null (Maybe.map E.string user.refreshToken) )
         ]
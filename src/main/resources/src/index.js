@@ -9,6 +9,14 @@ let backendApi =
 console.log(backendApi);
 
 var stompClient = null;
+var useSockJs = !window.WebSocket;
+var channelSubscriptions = {};
+var pendingMessages = {};
+var lastSeq = {};
+var nextCorrelationId = 0;
+// correlation ids stay unique across page loads, the server remembers recent ids of a user
+const correlationIdPrefix = Date.now().toString(36) + Math.random().toString(36).slice(2, 6) + "-";
+const MAX_MESSAGE_RESENDS = 3;
 let app = Elm.Main.init({
   flags: {
     backendApi: backendApi
@@ -16,16 +24,42 @@ let app = Elm.Main.init({
   node: document.getElementById("root")
 });
 
+const openSocket = () => {
+  if (useSockJs) {
+    return new SockJS(backendApi + "/ws_endpoint");
+  }
+  return new WebSocket(backendApi.replace(/^http/, "ws") + "/ws_native");
+};
+
 const connectWs = accessToken => {
   if (accessToken) {
-    var socket = new SockJS(backendApi + "/ws_endpoint");
+    var socket = openSocket();
+    var connected = false;
     stompClient = Stomp.over(socket);
     console.log("connecting with token : " + accessToken);
-    stompClient.connect({ token: accessToken }, function(frame) {
-      console.log("Connected: " + frame);
-      subscribeToSocket(stompClient);
-      sendHydratingMessages(stompClient);
-    });
+    stompClient.connect(
+      { token: accessToken, coalesce: "true" },
+      function(frame) {
+        console.log("Connected: " + frame);
+        connected = true;
+        channelSubscriptions = {};
+        subscribeToSocket(stompClient);
+        sendHydratingMessages(stompClient);
+        resendPendingMessages();
+      },
+      function(error) {
+        let retryAfter = error && error.headers && error.headers["retry-after"];
+        if (retryAfter) {
+          let delay = (Number(retryAfter) + Math.random() * Number(retryAfter)) * 1000;
+          console.log("server busy, reconnecting in " + Math.round(delay) + " ms");
+          window.setTimeout(() => connectWs(accessToken), delay);
+        } else if (!connected && !useSockJs && typeof error === "string") {
+          console.log("websocket connection failed, falling back to SockJS");
+          useSockJs = true;
+          connectWs(accessToken);
+        }
+      }
+    );
   } else {
     console.log("no token");
   }
@@ -34,28 +68,155 @@ const connectWs = accessToken => {
 const sendHydratingMessages = stomp => {
   sendWsEvent("/get_channels", {});
   sendWsEvent("/get_friends", {});
+  sendWsEvent("/inbox", {});
 };
 
-const subscribeToSocket = stomp => {
-  stomp.subscribe("/user/topic/channels", channel => {
-    app.ports.gotChannel.send(JSON.parse(channel.body));
-  });
-  stomp.subscribe("/user/topic/friends", channel => {
-    app.ports.gotFriend.send(JSON.parse(channel.body));
+const resendPendingMessages = () => {
+  Object.keys(pendingMessages).forEach(correlationId => {
+    let pending = pendingMessages[correlationId];
+    if (pending.resends >= MAX_MESSAGE_RESENDS) {
+      delete pendingMessages[correlationId];
+      showSnackbar("Message could not be sent");
+      return;
+    }
+    pending.resends++;
+    sendWsEvent(
+      "/message",
+      Object.assign({ correlationId: correlationId }, pending.request)
+    );
   });
+};
+
+// calls the handler with every payload of a frame, coalesced frames carry an array of payloads
+const eachPayload = handler => frame => {
+  let body = JSON.parse(frame.body);
+  if (frame.headers.batch) {
+    body.forEach(handler);
+  } else {
+    handler(body);
+  }
+};
+
+const subscribeToSocket = stomp => {
+  stomp.subscribe(
+    "/user/topic/channels",
+    eachPayload(channel => {
+      subscribeToChannel(stomp, channel.id);
+      app.ports.gotChannel.send(channel);
+    })
+  );
+  stomp.subscribe(
+    "/user/topic/channel_list",
+    eachPayload(channels => {
+      channels.forEach(channel => {
+        subscribeToChannel(stomp, channel.id);
+        app.ports.gotChannel.send(channel);
+      });
+    })
+  );
+  stomp.subscribe(
+    "/user/topic/friends",
+    eachPayload(friend => {
+      app.ports.gotFriend.send(friend);
+    })
+  );
   stomp.subscribe("/user/topic/notification", channel => {
     showSnackbar(channel.body);
   });
-  stomp.subscribe("/user/topic/deleted_friends", channel => {
-    app.ports.deletedFriend.send(channel.body);
-  });
+  stomp.subscribe(
+    "/user/topic/inbox",
+    eachPayload(inbox => {
+      if (inbox.channelIds.length > 0) {
+        showSnackbar(
+          "New messages in " +
+            inbox.channelIds.length +
+            (inbox.truncated ? "+" : "") +
+            " conversations"
+        );
+      }
+    })
+  );
+  stomp.subscribe(
+    "/user/topic/deleted_friends",
+    eachPayload(id => {
+      app.ports.deletedFriend.send(JSON.stringify(id));
+    })
+  );
 
-  stomp.subscribe("/user/topic/messages", channel => {
-    app.ports.gotMessage.send(JSON.parse(channel.body));
-  });
-  stomp.subscribe("/user/topic/previous_messages", channel => {
-    app.ports.gotPreviousMessage.send(JSON.parse(channel.body));
-  });
+  stomp.subscribe(
+    "/user/topic/message_ack",
+    eachPayload(ack => {
+      delete pendingMessages[ack.correlationId];
+      if (ack.error) {
+        showSnackbar("Message not sent: " + ack.error);
+      }
+    })
+  );
+
+  stomp.subscribe(
+    "/user/topic/messages",
+    eachPayload(message => {
+      seenSeq(message);
+      app.ports.gotMessage.send(message);
+    })
+  );
+  stomp.subscribe(
+    "/user/topic/message_range",
+    eachPayload(range => {
+      range.messages.forEach(message => {
+        seenSeq(message);
+        app.ports.gotMessage.send(message);
+      });
+      if (range.truncated && range.messages.length > 0) {
+        const last = range.messages[range.messages.length - 1];
+        sendWsEvent("/messages_range", {
+          channelId: range.channelId,
+          fromSeq: last.seq + 1,
+          toSeq: lastSeq[range.channelId]
+        });
+      }
+    })
+  );
+  stomp.subscribe(
+    "/user/topic/previous_messages",
+    eachPayload(previous => {
+      previous.messages.forEach(message => {
+        app.ports.gotPreviousMessage.send(message);
+      });
+    })
+  );
+};
+
+const subscribeToChannel = (stomp, channelId) => {
+  if (!channelSubscriptions[channelId]) {
+    channelSubscriptions[channelId] = stomp.subscribe(
+      "/topic/channel/" + channelId,
+      eachPayload(message => {
+        fillGap(message);
+        app.ports.gotMessage.send(message);
+      })
+    );
+  }
+};
+
+// remembers the highest sequence number seen in every channel
+const seenSeq = message => {
+  if (message.seq && !(lastSeq[message.channelId] >= message.seq)) {
+    lastSeq[message.channelId] = message.seq;
+  }
+};
+
+// requests the messages skipped between the last seen one and a live message in one range fetch
+const fillGap = message => {
+  const last = lastSeq[message.channelId];
+  if (message.seq && last && message.seq > last + 1) {
+    sendWsEvent("/messages_range", {
+      channelId: message.channelId,
+      fromSeq: last + 1,
+      toSeq: message.seq - 1
+    });
+  }
+  seenSeq(message);
 };
 
 const sendWsEvent = (topic, value) => {
@@ -128,6 +289,27 @@ app.ports.connectWs.subscribe(() => {
   connectWs(accessToken.token);
 });
 
+const postMessage = request => {
+  fetch(backendApi + "/conversation/message", {
+    method: "POST",
+    headers: {
+      "Content-Type": "application/json",
+      token: readUserFromLocalStorage().token
+    },
+    body: JSON.stringify(request)
+  });
+};
+
+app.ports.sendMessageWs.subscribe(request => {
+  if (stompClient != null && stompClient.connected) {
+    let correlationId = correlationIdPrefix + ++nextCorrelationId;
+    pendingMessages[correlationId] = { request: request, resends: 0 };
+    sendWsEvent("/message", Object.assign({ correlationId: correlationId }, request));
+  } else {
+    postMessage(request);
+  }
+});
+
 app.ports.showSnackbarOut.subscribe(msg => {
   app.ports.showSnackbarIn.send(msg);
 });
@@ -164,4 +346,22 @@ app.ports.clearMessageInput.subscribe(() => {
   }
 });
 
-app.ports.getSavedUser.send(readUserFromLocalStorage());
+const refreshSavedUser = () => {
+  let user = readUserFromLocalStorage();
+  if (!user || !user.refreshToken) {
+    return Promise.resolve(user);
+  }
+  return fetch(backendApi + "/api/auth/refresh", {
+    method: "POST",
+    headers: { "Content-Type": "application/json" },
+    body: JSON.stringify({ refreshToken: user.refreshToken })
+  })
+    .then(response => (response.ok ? response.json() : user))
+    .then(refreshed => {
+      saveToLocalStorage(USER_TOKEN, refreshed);
+      return refreshed;
+    })
+    .catch(() => user);
+};
+
+refreshSavedUser().then(user => app.ports.getSavedUser.send(user));
@@ -0,0 +1,27 @@
+package com.kmarzecki.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import java.time.LocalDateTime;
+
+/**
+ * Message columns mapped with the id generation the entities used before pooled sequences
+ * Kept outside of the application packages, so only the insert benchmark, which scans this package, maps it.
+ */
+@Entity
+@Getter
+@Setter
+public class SequencePerRowMessage {
+	@Id
+	@GeneratedValue
+	private Integer id;
+	private Integer channelId;
+	private Long seq;
+	private String payload;
+	private String username;
+	private LocalDateTime time;
+}
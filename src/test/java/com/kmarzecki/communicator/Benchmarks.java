@@ -0,0 +1,49 @@
+package com.kmarzecki.communicator;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timing helper of the benchmarks, test classes tagged with {@link #TAG} which run only with the benchmark task
+ */
+public final class Benchmarks {
+	public static final String TAG = "benchmark";
+
+	private Benchmarks() {
+	}
+
+	/**
+	 * Run a body a few times to warm up, then time it and print the median throughput
+	 * @param name name of the measured case
+	 * @param operations number of operations done by one run of the body
+	 * @param body measured code
+	 * @return median number of operations per second
+	 */
+	public static double throughput(String name, int operations, Runnable body) {
+		return throughput(name, operations, 2, 5, body);
+	}
+
+	public static double throughput(String name, int operations, int warmups, int runs, Runnable body) {
+		for (int i = 0; i < warmups; i++) {
+			body.run();
+		}
+		double[] results = new double[runs];
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			body.run();
+			results[i] = operations / ((System.nanoTime() - start) / 1e9);
+		}
+		Arrays.sort(results);
+		double median = results[runs / 2];
+		report(name, String.format(Locale.ROOT, "%,.0f ops/s (min %,.0f, max %,.0f, %d runs of %,d)",
+				median, results[0], results[runs - 1], runs, operations));
+		return median;
+	}
+
+	/**
+	 * Print a benchmark result in a format easy to find in the test output
+	 */
+	public static void report(String name, String result) {
+		System.out.println("BENCHMARK " + name + ": " + result);
+	}
+}
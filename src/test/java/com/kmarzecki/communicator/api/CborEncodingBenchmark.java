@@ -0,0 +1,68 @@
+package com.kmarzecki.communicator.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kmarzecki.communicator.Benchmarks;
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Encodings and decodings per second of a page of messages as JSON and as CBOR,
+ * the CBOR bytes either transcoded from the JSON bytes or encoded directly from the payload object
+ */
+@Tag(Benchmarks.TAG)
+class CborEncodingBenchmark {
+	private static final int OPERATIONS = 20_000;
+	private static final int PAGE = 50;
+
+	private final CborPayloadTranscoder transcoder = new CborPayloadTranscoder(new SimpleMeterRegistry());
+	private final ObjectMapper json = new MappingJackson2MessageConverter().getObjectMapper();
+	private final ObjectMapper cbor = Jackson2ObjectMapperBuilder.cbor().build();
+
+	@Test
+	void encodings() throws IOException {
+		List<MessageResponse> page = new ArrayList<>();
+		for (int i = 0; i < PAGE; i++) {
+			page.add(new MessageResponse(1_000 + i, 7, (long) i, "message number " + i + " of the page", "user-" + i % 3, 1_600_000_000L + i));
+		}
+		byte[] jsonBytes = json.writeValueAsBytes(page);
+		byte[] transcoded = transcoder.encode(jsonBytes, null);
+		byte[] direct = transcoder.encode(jsonBytes, page);
+		assertEquals(cbor.readTree(transcoded), cbor.readTree(direct));
+		Benchmarks.report("payload size", jsonBytes.length + " bytes as json, " + direct.length + " bytes as cbor");
+
+		Benchmarks.throughput("json encode", OPERATIONS, repeat(() -> json.writeValueAsBytes(page)));
+		Benchmarks.throughput("json to cbor transcode", OPERATIONS, repeat(() -> transcoder.encode(jsonBytes, null)));
+		Benchmarks.throughput("json encode and transcode", OPERATIONS,
+				repeat(() -> transcoder.encode(json.writeValueAsBytes(page), null)));
+		Benchmarks.throughput("direct cbor encode", OPERATIONS, repeat(() -> transcoder.encode(jsonBytes, page)));
+		Benchmarks.throughput("json decode", OPERATIONS, repeat(() -> json.readTree(jsonBytes)));
+		Benchmarks.throughput("cbor decode", OPERATIONS, repeat(() -> cbor.readTree(direct)));
+	}
+
+	private static Runnable repeat(Encoding encoding) {
+		return () -> {
+			try {
+				for (int i = 0; i < OPERATIONS; i++) {
+					encoding.run();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	private interface Encoding {
+		Object run() throws IOException;
+	}
+}
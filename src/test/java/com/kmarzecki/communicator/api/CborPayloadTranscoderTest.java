@@ -0,0 +1,81 @@
+package com.kmarzecki.communicator.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.kmarzecki.communicator.util.MessageUtils.PAYLOAD_FORMAT_HEADER;
+import static com.kmarzecki.communicator.util.MessageUtils.SOURCE_PAYLOAD_HEADER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+class CborPayloadTranscoderTest {
+	private final CborPayloadTranscoder transcoder = new CborPayloadTranscoder(new SimpleMeterRegistry());
+	private final MessageChannel channel = mock(MessageChannel.class);
+	private final ObjectMapper json = new MappingJackson2MessageConverter().getObjectMapper();
+	private final ObjectMapper cbor = Jackson2ObjectMapperBuilder.cbor().build();
+
+	@Test
+	void encodesSourcePayloadDirectly() throws Exception {
+		connect("cbor-session", "cbor");
+		Message<?> sent = transcoder.preSend(message("cbor-session", "json bytes", "source object"), channel);
+
+		assertEquals("source object", cbor.readValue((byte[]) sent.getPayload(), String.class));
+		assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, SimpMessageHeaderAccessor.wrap(sent).getContentType());
+	}
+
+	@Test
+	void transcodesPayloadWithoutSource() throws Exception {
+		MessageResponse response = new MessageResponse(1, 2, 3L, "hello", "user", 4L);
+		connect("cbor-session", "cbor");
+		Message<?> sent = transcoder.preSend(message("cbor-session", response, null), channel);
+
+		assertEquals(json.readTree(json.writeValueAsBytes(response)), cbor.readTree((byte[]) sent.getPayload()));
+	}
+
+	@Test
+	void keepsJsonOfOtherSessions() throws Exception {
+		connect("json-session", "json");
+		Message<?> message = message("json-session", "payload", "payload");
+
+		assertSame(message, transcoder.preSend(message, channel));
+	}
+
+	private void connect(String sessionId, String format) {
+		Map<String, Object> attributes = new HashMap<>();
+		transcoder.beforeHandshake(null, null, null, attributes);
+		StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+		connect.setNativeHeader(PAYLOAD_FORMAT_HEADER, format);
+		connect.setSessionAttributes(attributes);
+		SimpMessageHeaderAccessor ack = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+		ack.setSessionId(sessionId);
+		ack.setHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER,
+				MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+		transcoder.preSend(MessageBuilder.createMessage(new byte[0], ack.getMessageHeaders()), channel);
+	}
+
+	private Message<?> message(String sessionId, Object payload, Object source) throws Exception {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(sessionId);
+		accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+		accessor.setHeader(SOURCE_PAYLOAD_HEADER, source);
+		MessageHeaders headers = accessor.getMessageHeaders();
+		return MessageBuilder.createMessage(json.writeValueAsBytes(payload), headers);
+	}
+}
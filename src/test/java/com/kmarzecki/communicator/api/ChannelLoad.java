@@ -0,0 +1,142 @@
+package com.kmarzecki.communicator.api;
+
+import com.kmarzecki.communicator.model.Language;
+import com.kmarzecki.communicator.model.auth.UserEntity;
+import com.kmarzecki.communicator.repository.ChannelRepository;
+import com.kmarzecki.communicator.repository.UserRepository;
+import com.kmarzecki.communicator.security.JwtTokenService;
+import com.kmarzecki.communicator.service.ConversationService;
+import org.springframework.context.ApplicationContext;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.kmarzecki.communicator.util.MessageUtils.channelTopic;
+
+/**
+ * Users of one conversation channel connected over STOMP, each subscribed to the channel topic,
+ * sending messages to the channel for the websocket benchmarks
+ */
+class ChannelLoad implements AutoCloseable {
+	private static final AtomicInteger LOADS = new AtomicInteger();
+	private static final long TIMEOUT_SECONDS = 120;
+
+	private final List<StompSession> sessions = new ArrayList<>();
+	private final AtomicReference<CountDownLatch> deliveries = new AtomicReference<>(new CountDownLatch(0));
+	private final Integer channelId;
+
+	/**
+	 * Create the users and their channel, then connect a session of every user
+	 * @param context application context of the server
+	 * @param client STOMP client, its message converter is replaced
+	 * @param url websocket url of the endpoint
+	 * @param users number of users
+	 */
+	ChannelLoad(ApplicationContext context, WebSocketStompClient client, String url, int users) throws Exception {
+		String prefix = "load-" + LOADS.incrementAndGet() + "-";
+		UserRepository userRepository = context.getBean(UserRepository.class);
+		JwtTokenService tokenService = context.getBean(JwtTokenService.class);
+		Set<String> usernames = new HashSet<>();
+		for (int i = 0; i < users; i++) {
+			usernames.add(userRepository.save(UserEntity.builder()
+					.username(prefix + i)
+					.password("")
+					.roles(Collections.emptySet())
+					.build()).getUsername());
+		}
+		String creator = prefix + 0;
+		context.getBean(ConversationService.class).createChannel(prefix + "channel", new HashSet<>(usernames), Language.EN, () -> creator);
+		channelId = context.getBean(ChannelRepository.class).findSummariesByUsername(creator).get(0).getId();
+
+		client.setMessageConverter(new SimpleMessageConverter());
+		for (String username : usernames) {
+			StompHeaders connect = new StompHeaders();
+			connect.add("token", tokenService.createToken(username, Collections.emptyList()));
+			StompSession session = client.connect(url, new WebSocketHttpHeaders(), connect, new StompSessionHandlerAdapter() {
+			}).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			session.subscribe(channelTopic(channelId), new StompFrameHandler() {
+				@Override
+				public Type getPayloadType(StompHeaders headers) {
+					return byte[].class;
+				}
+
+				@Override
+				public void handleFrame(StompHeaders headers, Object payload) {
+					deliveries.get().countDown();
+				}
+			});
+			sessions.add(session);
+		}
+		awaitSubscriptions(context.getBean(SimpUserRegistry.class), channelTopic(channelId), users);
+	}
+
+	/**
+	 * The simple broker does not send receipts, the subscriptions are checked in the user registry of the server
+	 */
+	private static void awaitSubscriptions(SimpUserRegistry registry, String destination, int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while (registry.findSubscriptions(subscription -> destination.equals(subscription.getDestination())).size() < count) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Subscriptions to " + destination + " not registered");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * @param messagesPerUser number of messages sent by every user
+	 * @return number of frames delivered to the users by a round
+	 */
+	int deliveries(int messagesPerUser) {
+		return messagesPerUser * sessions.size() * sessions.size();
+	}
+
+	/**
+	 * Send messages from every user to the channel and wait until every member received every message
+	 * @param messagesPerUser number of messages sent by every user
+	 */
+	void round(int messagesPerUser) {
+		CountDownLatch latch = new CountDownLatch(deliveries(messagesPerUser));
+		deliveries.set(latch);
+		for (int i = 0; i < messagesPerUser; i++) {
+			for (StompSession session : sessions) {
+				StompHeaders headers = new StompHeaders();
+				headers.setDestination("/app/message");
+				headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+				String body = "{\"channelId\":" + channelId + ",\"payload\":\"load message " + i + "\"}";
+				session.send(headers, body.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		try {
+			if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				throw new IllegalStateException(latch.getCount() + " frames not delivered");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		sessions.forEach(StompSession::disconnect);
+	}
+}
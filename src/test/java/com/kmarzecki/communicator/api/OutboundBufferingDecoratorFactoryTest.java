@@ -0,0 +1,108 @@
+package com.kmarzecki.communicator.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundBufferingDecoratorFactoryTest {
+	private static final long SEND_TIME_LIMIT = 2_000;
+	private static final int FAST_SESSIONS = 3;
+	private static final int FRAMES = 200;
+
+	private final OutboundBufferingDecoratorFactory factory = new OutboundBufferingDecoratorFactory(properties(), new SimpleMeterRegistry());
+	private final WebSocketHandler handler = mock(WebSocketHandler.class);
+	private final WebSocketHandler decorated = factory.decorate(handler);
+
+	@AfterEach
+	void shutdown() {
+		factory.shutdown();
+	}
+
+	@Test
+	void slowSessionDoesNotDelayOthers() throws Exception {
+		CountDownLatch slowWriteStarted = new CountDownLatch(1);
+		CountDownLatch slowClosed = new CountDownLatch(1);
+		WebSocketSession slow = delegate("slow");
+		doAnswer(invocation -> {
+			slowWriteStarted.countDown();
+			// a blocked write fails once the connection is closed
+			slowClosed.await();
+			throw new IOException("closed");
+		}).when(slow).sendMessage(any());
+		doAnswer(invocation -> {
+			slowClosed.countDown();
+			return null;
+		}).when(slow).close(any());
+		WebSocketSession slowBuffered = connect(slow);
+
+		List<WebSocketSession> fast = new ArrayList<>();
+		List<WebSocketSession> fastBuffered = new ArrayList<>();
+		for (int i = 0; i < FAST_SESSIONS; i++) {
+			WebSocketSession session = delegate("fast-" + i);
+			fast.add(session);
+			fastBuffered.add(connect(session));
+		}
+
+		slowBuffered.sendMessage(new TextMessage("MESSAGE\n\nslow"));
+		assertTrue(slowWriteStarted.await(1, TimeUnit.SECONDS));
+		for (int frame = 0; frame < FRAMES; frame++) {
+			for (WebSocketSession session : fastBuffered) {
+				session.sendMessage(new TextMessage("MESSAGE\n\n" + frame));
+			}
+		}
+		for (WebSocketSession session : fast) {
+			verify(session, timeout(SEND_TIME_LIMIT).times(FRAMES)).sendMessage(any());
+		}
+		assertEquals(1, slowClosed.getCount(), "frames of other sessions waited for the slow write");
+
+		// no further frame is sent to the slow session, the watchdog closes it
+		verify(slow, timeout(SEND_TIME_LIMIT * 3)).close(CloseStatus.SESSION_NOT_RELIABLE);
+		for (WebSocketSession session : fast) {
+			verify(session, times(0)).close(any());
+		}
+	}
+
+	private WebSocketSession connect(WebSocketSession delegate) throws Exception {
+		ArgumentCaptor<WebSocketSession> buffered = ArgumentCaptor.forClass(WebSocketSession.class);
+		decorated.afterConnectionEstablished(delegate);
+		verify(handler, atLeastOnce()).afterConnectionEstablished(buffered.capture());
+		return buffered.getValue();
+	}
+
+	private static WebSocketSession delegate(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		when(session.isOpen()).thenReturn(true);
+		return session;
+	}
+
+	private static WebSocketProperties properties() {
+		WebSocketProperties properties = new WebSocketProperties();
+		properties.setFlushThreads(2);
+		properties.setSendTimeLimit(Duration.ofMillis(SEND_TIME_LIMIT));
+		return properties;
+	}
+}
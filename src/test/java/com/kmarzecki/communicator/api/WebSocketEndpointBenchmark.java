@@ -0,0 +1,107 @@
+package com.kmarzecki.communicator.api;
+
+import com.kmarzecki.communicator.Benchmarks;
+import com.kmarzecki.communicator.model.auth.UserEntity;
+import com.kmarzecki.communicator.repository.UserRepository;
+import com.kmarzecki.communicator.security.JwtTokenService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames delivered per second and heap used per idle session of the SockJS endpoint and of the raw websocket endpoint
+ * Clients run in the same JVM as the server, so the heap per session holds both ends of a connection.
+ * Both endpoints are measured twice, alternately, the first pass warms up the JVM.
+ */
+@Tag(Benchmarks.TAG)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class WebSocketEndpointBenchmark {
+	private static final int USERS = 10;
+	private static final int MESSAGES_PER_USER = 100;
+	private static final int IDLE_SESSIONS = 200;
+
+	@Autowired
+	private ApplicationContext context;
+	@Autowired
+	private UserRepository userRepository;
+	@Autowired
+	private JwtTokenService tokenService;
+	@LocalServerPort
+	private int port;
+
+	@Test
+	void endpoints() throws Exception {
+		measure("sockjs", this::sockJsClient, "/ws_endpoint");
+		measure("raw", this::rawClient, "/ws_native");
+		measure("sockjs", this::sockJsClient, "/ws_endpoint");
+		measure("raw", this::rawClient, "/ws_native");
+	}
+
+	private void measure(String name, ClientFactory clients, String endpoint) throws Exception {
+		String url = "ws://localhost:" + port + endpoint;
+		try (ChannelLoad load = new ChannelLoad(context, clients.create(), url, USERS)) {
+			Benchmarks.throughput(name + " endpoint (frames)", load.deliveries(MESSAGES_PER_USER), 3, 5,
+					() -> load.round(MESSAGES_PER_USER));
+		}
+		measureIdleSessions(name, clients.create(), url);
+	}
+
+	private void measureIdleSessions(String name, WebSocketStompClient client, String url) throws Exception {
+		String username = "idle-" + name + "-" + System.nanoTime();
+		userRepository.save(UserEntity.builder()
+				.username(username)
+				.password("")
+				.roles(Collections.emptySet())
+				.build());
+		StompHeaders connect = new StompHeaders();
+		connect.add("token", tokenService.createToken(username, Collections.emptyList()));
+		List<StompSession> sessions = new ArrayList<>();
+		long before = usedHeap();
+		for (int i = 0; i < IDLE_SESSIONS; i++) {
+			sessions.add(client.connect(url, new WebSocketHttpHeaders(), connect, new StompSessionHandlerAdapter() {
+			}).get(30, TimeUnit.SECONDS));
+		}
+		long after = usedHeap();
+		Benchmarks.report(name + " endpoint (heap per idle session)",
+				String.format(Locale.ROOT, "%,d bytes over %d sessions", (after - before) / IDLE_SESSIONS, IDLE_SESSIONS));
+		sessions.forEach(StompSession::disconnect);
+	}
+
+	private WebSocketStompClient sockJsClient() {
+		return new WebSocketStompClient(new SockJsClient(Collections.singletonList(new WebSocketTransport(new StandardWebSocketClient()))));
+	}
+
+	private WebSocketStompClient rawClient() {
+		return new WebSocketStompClient(new StandardWebSocketClient());
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private interface ClientFactory {
+		WebSocketStompClient create();
+	}
+}
@@ -0,0 +1,56 @@
+package com.kmarzecki.communicator.api;
+
+import com.kmarzecki.communicator.Benchmarks;
+import com.kmarzecki.communicator.CommunicatorApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames delivered per second to the members of a busy channel, for several sizes of the channel executors
+ * Every case starts its own server with the communicator.websocket pool properties of the case.
+ */
+@Tag(Benchmarks.TAG)
+class WebSocketPoolBenchmark {
+	private static final int USERS = 10;
+	private static final int MESSAGES_PER_USER = 100;
+
+	@Test
+	void poolSizes() throws Exception {
+		measure("default pools", new ArrayList<>());
+		measure("1 thread per channel", pools(1, "inbound", "outbound"));
+		measure("8 threads per channel", pools(8, "inbound", "outbound"));
+		measure("8 threads per channel and broker", pools(8, "inbound", "outbound", "broker"));
+		measure("32 threads per channel", pools(32, "inbound", "outbound"));
+	}
+
+	private void measure(String name, List<String> properties) throws Exception {
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CommunicatorApplication.class)
+				.properties("server.port=0", "spring.datasource.generate-unique-name=true")
+				.properties(properties.toArray(new String[0]))
+				.run()) {
+			String url = "ws://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/ws_native";
+			WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+			try (ChannelLoad load = new ChannelLoad(context, client, url, USERS)) {
+				Benchmarks.throughput(name + " (frames)", load.deliveries(MESSAGES_PER_USER), 3, 5,
+						() -> load.round(MESSAGES_PER_USER));
+			}
+		}
+	}
+
+	private static List<String> pools(int threads, String... channels) {
+		List<String> properties = new ArrayList<>();
+		for (String channel : channels) {
+			String prefix = "communicator.websocket." + channel + ".";
+			properties.add(prefix + "core-pool-size=" + threads);
+			properties.add(prefix + "max-pool-size=" + threads);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,88 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogMessageStoreTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	void loadRestoresLastIdAndSkipsForeignDirectories() throws IOException {
+		LogStoreProperties properties = new LogStoreProperties();
+		properties.setDirectory(directory.toString());
+		properties.setSegmentSize(500);
+		LogMessageStore store = new LogMessageStore(properties);
+		store.load();
+		for (int i = 0; i < 20; i++) {
+			store.append(message(i % 2 + 1, "message " + i));
+		}
+		store.close();
+		Files.createDirectories(directory.resolve("lost+found"));
+		Files.createDirectories(directory.resolve("99999999999"));
+
+		LogMessageStore reopened = new LogMessageStore(properties);
+		reopened.load();
+		MessageEntity appended = reopened.append(message(1, "after restart"));
+		assertEquals(21, appended.getId());
+		assertEquals(11L, appended.getSeq());
+		assertEquals(11, reopened.findAfter(1, 0, 100).size());
+		assertEquals(10, reopened.findAfter(2, 0, 100).size());
+		reopened.close();
+	}
+
+	@Test
+	void closesLeastRecentlyUsedChannelLogs() throws IOException {
+		LogStoreProperties properties = new LogStoreProperties();
+		properties.setDirectory(directory.toString());
+		properties.setMaxOpenChannels(2);
+		LogMessageStore store = new LogMessageStore(properties);
+		store.load();
+		for (int i = 0; i < 30; i++) {
+			store.append(message(i % 5 + 1, "message " + i));
+			assertTrue(store.openChannelCount() <= 2);
+		}
+		for (int channelId = 1; channelId <= 5; channelId++) {
+			assertEquals(6, store.findAfter(channelId, 0, 100).size());
+		}
+		MessageEntity appended = store.append(message(1, "after reopening"));
+		assertEquals(31, appended.getId());
+		assertEquals(7L, appended.getSeq());
+		assertTrue(store.openChannelCount() <= 2);
+		store.close();
+	}
+
+	@Test
+	void keepsMessagesOfUnknownUsers() throws IOException {
+		LogStoreProperties properties = new LogStoreProperties();
+		properties.setDirectory(directory.toString());
+		LogMessageStore store = new LogMessageStore(properties);
+		store.load();
+		MessageEntity message = message(1, "unknown sender");
+		message.setUserId(null);
+		store.append(message);
+
+		assertNull(store.findLatest(1, 1).get(0).getUserId());
+		store.close();
+	}
+
+	private static MessageEntity message(int channelId, String payload) {
+		return MessageEntity.builder()
+				.channelId(channelId)
+				.userId(1)
+				.username("ann")
+				.payload(payload)
+				.time(LocalDateTime.of(2020, 1, 1, 0, 0))
+				.build();
+	}
+}
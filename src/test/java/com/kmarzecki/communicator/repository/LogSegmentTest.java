@@ -0,0 +1,193 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LogSegmentTest {
+	private static final int CHANNEL_ID = 7;
+	private static final int INDEX_INTERVAL = 100;
+	private static final LocalDateTime TIME = LocalDateTime.of(2020, 1, 1, 12, 0, 0, 500);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void recordsAreWrittenInVersionTwoFormat() throws IOException {
+		try (LogSegment segment = LogSegment.create(directory, 5, CHANNEL_ID, INDEX_INTERVAL)) {
+			segment.append(message(5, 1, "użytkownik", "hello"));
+		}
+
+		ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("0000000005.log")));
+		int length = file.getInt();
+		assertEquals(file.capacity() - 8, length);
+		int checksum = file.getInt();
+		CRC32 crc = new CRC32();
+		crc.update(file.array(), 8, length);
+		assertEquals((int) crc.getValue(), checksum);
+		assertEquals(2, file.get());
+		assertEquals(5, file.getInt());
+		assertEquals(1L, file.getLong());
+		assertEquals(3, file.getInt());
+		assertEquals(TIME.toEpochSecond(ZoneOffset.UTC), file.getLong());
+		assertEquals(500, file.getInt());
+		byte[] username = new byte[file.getInt()];
+		file.get(username);
+		assertArrayEquals("użytkownik".getBytes(UTF_8), username);
+		byte[] payload = new byte[file.getInt()];
+		file.get(payload);
+		assertArrayEquals("hello".getBytes(UTF_8), payload);
+		assertEquals(0, file.remaining());
+	}
+
+	@Test
+	void versionOneRecordsReadWithoutSequenceNumbers() throws IOException {
+		Path path = directory.resolve("0000000005.log");
+		Files.write(path, versionOneRecord(5, "old"));
+
+		try (LogSegment segment = LogSegment.open(path, CHANNEL_ID, INDEX_INTERVAL)) {
+			segment.recover();
+			assertEquals(5, segment.lastId());
+			assertEquals(0, segment.lastSeq());
+			segment.append(message(6, 1, "bob", "new"));
+
+			List<MessageEntity> messages = new ArrayList<>();
+			segment.readAfter(0, 10, messages);
+			assertEquals(2, messages.size());
+			assertNull(messages.get(0).getSeq());
+			assertEquals("old", messages.get(0).getPayload());
+			assertEquals(CHANNEL_ID, messages.get(0).getChannelId());
+			assertEquals(1L, messages.get(1).getSeq());
+			assertEquals("new", messages.get(1).getPayload());
+
+			List<MessageEntity> numbered = new ArrayList<>();
+			segment.readRange(1, 5, 10, numbered);
+			assertEquals(1, numbered.size());
+			assertEquals(6, numbered.get(0).getId());
+		}
+	}
+
+	@Test
+	void recoverTruncatesTornRecord() throws IOException {
+		Path path = directory.resolve("0000000001.log");
+		try (LogSegment segment = LogSegment.create(directory, 1, CHANNEL_ID, INDEX_INTERVAL)) {
+			for (int id = 1; id <= 3; id++) {
+				segment.append(message(id, id, "ann", "message " + id));
+			}
+		}
+		long validSize = Files.size(path);
+		Files.write(path, new byte[]{0, 0, 0, 50, 2, 0}, StandardOpenOption.APPEND);
+
+		try (LogSegment segment = LogSegment.open(path, CHANNEL_ID, INDEX_INTERVAL)) {
+			segment.recover();
+			assertEquals(validSize, Files.size(path));
+			assertEquals(validSize, segment.size());
+			assertEquals(3, segment.lastId());
+			assertEquals(3, segment.lastSeq());
+			segment.append(message(4, 4, "ann", "message 4"));
+
+			List<MessageEntity> messages = new ArrayList<>();
+			segment.readAfter(2, 10, messages);
+			assertEquals(2, messages.size());
+			assertEquals("message 4", messages.get(1).getPayload());
+		}
+	}
+
+	@Test
+	void recoverTruncatesRecordWithWrongChecksum() throws IOException {
+		Path path = directory.resolve("0000000001.log");
+		try (LogSegment segment = LogSegment.create(directory, 1, CHANNEL_ID, INDEX_INTERVAL)) {
+			segment.append(message(1, 1, "ann", "kept"));
+		}
+		long validSize = Files.size(path);
+		try (LogSegment segment = LogSegment.open(path, CHANNEL_ID, INDEX_INTERVAL)) {
+			segment.recover();
+			segment.append(message(2, 2, "ann", "corrupted"));
+		}
+		byte[] bytes = Files.readAllBytes(path);
+		bytes[bytes.length - 1] ^= 1;
+		Files.write(path, bytes);
+
+		try (LogSegment segment = LogSegment.open(path, CHANNEL_ID, INDEX_INTERVAL)) {
+			segment.recover();
+			assertEquals(validSize, Files.size(path));
+			assertEquals(1, segment.lastId());
+		}
+	}
+
+	@Test
+	void readsSeeRecordsAppendedAfterMapping() throws IOException {
+		try (LogSegment segment = LogSegment.create(directory, 1, CHANNEL_ID, INDEX_INTERVAL)) {
+			for (int id = 1; id <= 200; id++) {
+				segment.append(message(id, id, "ann", "message " + id));
+				List<MessageEntity> latest = new ArrayList<>();
+				segment.readBefore(new MessageCursor(LocalDateTime.MAX, Integer.MAX_VALUE), 2, latest);
+				assertEquals(id, latest.get(0).getId());
+				List<MessageEntity> after = new ArrayList<>();
+				segment.readAfter(id / 2, 1000, after);
+				assertEquals(id - id / 2, after.size());
+				assertEquals(id, after.get(after.size() - 1).getId());
+			}
+			List<MessageEntity> range = new ArrayList<>();
+			segment.readRange(50, 149, 1000, range);
+			assertEquals(100, range.size());
+			for (int i = 0; i < range.size(); i++) {
+				assertEquals(50L + i, range.get(i).getSeq());
+			}
+		}
+	}
+
+	private static MessageEntity message(int id, long seq, String username, String payload) {
+		return MessageEntity.builder()
+				.id(id)
+				.seq(seq)
+				.channelId(CHANNEL_ID)
+				.userId(3)
+				.username(username)
+				.payload(payload)
+				.time(TIME)
+				.build();
+	}
+
+	/**
+	 * @return record written before messages were numbered, without a sequence number
+	 */
+	private static byte[] versionOneRecord(int id, String payload) {
+		byte[] username = "ann".getBytes(UTF_8);
+		byte[] body = payload.getBytes(UTF_8);
+		int length = 1 + 4 + 4 + 8 + 4 + 4 + username.length + 4 + body.length;
+		ByteBuffer record = ByteBuffer.allocate(8 + length);
+		record.putInt(length)
+				.putInt(0)
+				.put((byte) 1)
+				.putInt(id)
+				.putInt(3)
+				.putLong(TIME.toEpochSecond(ZoneOffset.UTC))
+				.putInt(TIME.getNano())
+				.putInt(username.length)
+				.put(username)
+				.putInt(body.length)
+				.put(body);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 8, length);
+		record.putInt(4, (int) crc.getValue());
+		return record.array();
+	}
+}
@@ -0,0 +1,105 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.benchmark.SequencePerRowMessage;
+import com.kmarzecki.communicator.Benchmarks;
+import com.kmarzecki.communicator.CommunicatorApplication;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message inserts per second with the former id mapping, one sequence round trip per id,
+ * against the pooled-lo ids of {@link MessageEntity}, per message and in JDBC batches
+ */
+@Tag(Benchmarks.TAG)
+@SpringBootTest
+class MessageInsertBenchmark {
+	private static final int MESSAGES = 5_000;
+	private static final int CHANNEL_ID = 1_000_000;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	private final AtomicLong seq = new AtomicLong();
+
+	@Test
+	void inserts() {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+		Benchmarks.throughput("insert per transaction, sequence round trip per id", MESSAGES, () -> {
+			for (SequencePerRowMessage message : sequencePerRowMessages()) {
+				transactionTemplate.execute(status -> persist(message));
+			}
+		});
+		Benchmarks.throughput("insert per transaction, pooled-lo ids", MESSAGES, () -> {
+			for (MessageEntity message : messages()) {
+				transactionTemplate.execute(status -> persist(message));
+			}
+		});
+		Benchmarks.throughput("inserts in one transaction, sequence round trip per id", MESSAGES, () ->
+				transactionTemplate.execute(status -> {
+					sequencePerRowMessages().forEach(this::persist);
+					return null;
+				}));
+		Benchmarks.throughput("inserts in one transaction, pooled-lo ids, JDBC batches", MESSAGES, () ->
+				transactionTemplate.execute(status -> {
+					messages().forEach(this::persist);
+					return null;
+				}));
+	}
+
+	private Object persist(Object entity) {
+		entityManager.persist(entity);
+		return entity;
+	}
+
+	private List<MessageEntity> messages() {
+		List<MessageEntity> messages = new ArrayList<>(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			messages.add(MessageEntity.builder()
+					.channelId(CHANNEL_ID)
+					.seq(seq.incrementAndGet())
+					.username("benchmark")
+					.payload("benchmark message " + i)
+					.time(LocalDateTime.now())
+					.build());
+		}
+		return messages;
+	}
+
+	private List<SequencePerRowMessage> sequencePerRowMessages() {
+		List<SequencePerRowMessage> messages = new ArrayList<>(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			SequencePerRowMessage message = new SequencePerRowMessage();
+			message.setChannelId(CHANNEL_ID);
+			message.setSeq(seq.incrementAndGet());
+			message.setUsername("benchmark");
+			message.setPayload("benchmark message " + i);
+			message.setTime(LocalDateTime.now());
+			messages.add(message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Adds the package of the benchmark entity to the scanned application entities
+	 */
+	@TestConfiguration
+	@EntityScan(basePackageClasses = {CommunicatorApplication.class, SequencePerRowMessage.class})
+	static class BenchmarkEntities {
+	}
+}
@@ -0,0 +1,126 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.Benchmarks;
+import com.kmarzecki.communicator.model.auth.UserEntity;
+import com.kmarzecki.communicator.model.conversation.MessageCursor;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Appends and history reads per second of the log message store against the JPA message store
+ */
+@Tag(Benchmarks.TAG)
+@SpringBootTest
+class MessageStoreBenchmark {
+	private static final int MESSAGES = 2_000;
+	private static final int READS = 2_000;
+	private static final int PAGE = 50;
+	private static final int LARGE_SEGMENT_MESSAGES = 500_000;
+
+	@Autowired
+	private MessageStore jpaStore;
+	@Autowired
+	private UserRepository userRepository;
+	@TempDir
+	Path directory;
+	private final AtomicInteger channelIds = new AtomicInteger(2_000_000);
+	private Integer userId;
+
+	@Test
+	void stores() throws IOException {
+		userId = userRepository.save(UserEntity.builder()
+				.username("store-benchmark")
+				.password("")
+				.roles(Collections.emptySet())
+				.build()).getId();
+		LogStoreProperties properties = new LogStoreProperties();
+		properties.setDirectory(directory.toString());
+		LogMessageStore logStore = new LogMessageStore(properties);
+		logStore.load();
+		try {
+			measure("jpa", jpaStore);
+			measure("log", logStore);
+			measureLargeSegment(logStore);
+		} finally {
+			logStore.close();
+		}
+	}
+
+	private void measure(String name, MessageStore store) {
+		Benchmarks.throughput(name + " store append", MESSAGES, () -> {
+			int channelId = channelIds.incrementAndGet();
+			for (int i = 0; i < MESSAGES; i++) {
+				store.append(message(channelId, i));
+			}
+		});
+
+		int channelId = channelIds.incrementAndGet();
+		for (int i = 0; i < MESSAGES; i++) {
+			store.append(message(channelId, i));
+		}
+		List<MessageEntity> all = store.findAfter(channelId, 0, MESSAGES);
+		int firstId = all.get(0).getId();
+		Benchmarks.throughput(name + " store latest " + PAGE + " messages", READS, () -> {
+			for (int i = 0; i < READS; i++) {
+				store.findLatest(channelId, PAGE);
+			}
+		});
+		Benchmarks.throughput(name + " store " + PAGE + " messages before a cursor", READS, () -> {
+			for (int i = 0; i < READS; i++) {
+				MessageEntity position = all.get(PAGE + i % (MESSAGES - PAGE));
+				store.findBefore(channelId, MessageCursor.of(position), PAGE);
+			}
+		});
+		Benchmarks.throughput(name + " store " + PAGE + " messages after an id", READS, () -> {
+			for (int i = 0; i < READS; i++) {
+				store.findAfter(channelId, firstId + i % (MESSAGES - PAGE), PAGE);
+			}
+		});
+		Benchmarks.throughput(name + " store append followed by a read of the latest " + PAGE + " messages", MESSAGES, () -> {
+			int appendedChannelId = channelIds.incrementAndGet();
+			for (int i = 0; i < MESSAGES; i++) {
+				store.append(message(appendedChannelId, i));
+				store.findLatest(appendedChannelId, PAGE);
+			}
+		});
+	}
+
+	/**
+	 * Appends interleaved with reads on a tail segment already holding many messages,
+	 * the reads must not map the whole segment again after every append
+	 */
+	private void measureLargeSegment(MessageStore store) {
+		int channelId = channelIds.incrementAndGet();
+		for (int i = 0; i < LARGE_SEGMENT_MESSAGES; i++) {
+			store.append(message(channelId, i));
+		}
+		Benchmarks.throughput("log store append followed by a read of the latest " + PAGE + " messages, "
+				+ LARGE_SEGMENT_MESSAGES + " messages in the segment", MESSAGES, () -> {
+			for (int i = 0; i < MESSAGES; i++) {
+				store.append(message(channelId, i));
+				store.findLatest(channelId, PAGE);
+			}
+		});
+	}
+
+	private MessageEntity message(int channelId, int i) {
+		return MessageEntity.builder()
+				.channelId(channelId)
+				.userId(userId)
+				.username("benchmark")
+				.payload("benchmark message " + i)
+				.time(LocalDateTime.now())
+				.build();
+	}
+}
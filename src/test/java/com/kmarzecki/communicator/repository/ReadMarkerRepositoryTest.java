@@ -0,0 +1,35 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.ReadMarkerEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class ReadMarkerRepositoryTest {
+	@Autowired
+	private ReadMarkerRepository readMarkerRepository;
+
+	@Test
+	void upsertAllInsertsAndUpdatesMarkers() {
+		readMarkerRepository.upsertAll(Arrays.asList(
+				new ReadMarkerEntity("upsert", 1, 10),
+				new ReadMarkerEntity("upsert", 2, 20)));
+		readMarkerRepository.upsertAll(Arrays.asList(
+				new ReadMarkerEntity("upsert", 2, 25),
+				new ReadMarkerEntity("upsert", 3, 30)));
+
+		Map<Integer, Integer> markers = readMarkerRepository.findAllByUsername("upsert").stream()
+				.collect(Collectors.toMap(ReadMarkerEntity::getChannelId, ReadMarkerEntity::getLastReadMessageId));
+		assertEquals(3, markers.size());
+		assertEquals(10, markers.get(1));
+		assertEquals(25, markers.get(2));
+		assertEquals(30, markers.get(3));
+	}
+}
@@ -0,0 +1,104 @@
+package com.kmarzecki.communicator.repository;
+
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+		"communicator.messages.write-behind.enabled=true",
+		"communicator.messages.write-behind.dead-letter-file=${java.io.tmpdir}/communicator-write-behind-test/dead-letter.jsonl"
+})
+@DirtiesContext
+class WriteBehindMessageWriterTest {
+	private static final Path DEAD_LETTER_FILE = Paths.get(System.getProperty("java.io.tmpdir"), "communicator-write-behind-test", "dead-letter.jsonl");
+	private static final int CHANNEL_ID = 900;
+
+	@Autowired
+	private WriteBehindMessageWriter writer;
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Test
+	void failingRowIsDeadLetteredWithoutLosingItsBatch() throws Exception {
+		Files.deleteIfExists(DEAD_LETTER_FILE);
+		List<Integer> ids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			String payload = i == 7 ? new String(new char[1000]).replace('\0', 'x') : "message " + i;
+			ids.add(writer.write(message(CHANNEL_ID, (long) i + 1, payload)).getId());
+		}
+		Integer failed = ids.remove(7);
+
+		await(() -> messageRepository.findAllById(ids).size() == ids.size());
+		assertEquals(19, messageRepository.findAllById(ids).size());
+		assertTrue(!messageRepository.existsById(failed));
+		List<String> deadLetters = Files.readAllLines(DEAD_LETTER_FILE, UTF_8);
+		assertEquals(1, deadLetters.size());
+		assertTrue(deadLetters.get(0).contains("\"id\":" + failed));
+	}
+
+	@Test
+	void nullableColumnsAreWritten() throws Exception {
+		MessageEntity message = writer.write(MessageEntity.builder()
+				.channelId(CHANNEL_ID + 1)
+				.username("ann")
+				.payload("no seq, no user id")
+				.time(LocalDateTime.now())
+				.build());
+
+		await(() -> messageRepository.existsById(message.getId()));
+	}
+
+	@Test
+	void idsAreUniqueAcrossBlocks() throws Exception {
+		Set<Integer> ids = new HashSet<>();
+		for (int i = 0; i < 175; i++) {
+			ids.add(writer.write(message(CHANNEL_ID + 2, (long) i + 1, "m" + i)).getId());
+		}
+
+		assertEquals(175, ids.size());
+		await(() -> messageRepository.findAllById(ids).size() == ids.size());
+	}
+
+	@Test
+	void writesAfterStopArePersistedSynchronously() throws Exception {
+		writer.stop();
+
+		MessageEntity message = writer.write(message(CHANNEL_ID + 3, 1L, "after stop"));
+
+		assertTrue(messageRepository.existsById(message.getId()));
+	}
+
+	private static MessageEntity message(int channelId, Long seq, String payload) {
+		return MessageEntity.builder()
+				.channelId(channelId)
+				.seq(seq)
+				.username("ann")
+				.payload(payload)
+				.time(LocalDateTime.now())
+				.build();
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(20);
+		}
+	}
+}
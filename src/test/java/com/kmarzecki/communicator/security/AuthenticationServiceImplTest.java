@@ -0,0 +1,65 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.model.auth.LoginResponse;
+import com.kmarzecki.communicator.util.DateTimeProvider;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthenticationServiceImplTest {
+	private static final List<GrantedAuthority> USER = Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+	private static final List<GrantedAuthority> ADMIN = Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+	private final DateTimeProvider dateProvider = mock(DateTimeProvider.class);
+	private final JwtProperties properties = new JwtProperties();
+	private final JwtTokenService tokenService = new JwtTokenService(
+			dateProvider, new VerifiedTokenCacheImpl(dateProvider, properties), properties);
+	private final UserDetailsServiceImpl userService = mock(UserDetailsServiceImpl.class);
+	private final AuthenticationServiceImpl authenticationService = new AuthenticationServiceImpl(
+			tokenService, mock(AuthenticationManager.class), userService, mock(PasswordHashingExecutor.class));
+
+	AuthenticationServiceImplTest() {
+		when(dateProvider.currentDate()).thenAnswer(invocation -> new Date());
+	}
+
+	@Test
+	void refreshReloadsRoles() {
+		when(userService.loadUserByUsername("ann")).thenReturn(new User("ann", "", ADMIN));
+
+		LoginResponse response = authenticationService.refresh(tokenService.createRefreshToken("ann", USER));
+
+		assertEquals(ADMIN, tokenService.getAuthentication(response.getToken()).getAuthorities());
+	}
+
+	@Test
+	void refreshTokenCanBeUsedOnce() {
+		when(userService.loadUserByUsername("ann")).thenReturn(new User("ann", "", USER));
+		String refreshToken = tokenService.createRefreshToken("ann", USER);
+
+		LoginResponse response = authenticationService.refresh(refreshToken);
+
+		assertThrows(JwtException.class, () -> authenticationService.refresh(refreshToken));
+		assertEquals("ann", authenticationService.refresh(response.getRefreshToken()).getUsername());
+	}
+
+	@Test
+	void refreshOfRemovedUserIsRejected() {
+		when(userService.loadUserByUsername("ann")).thenThrow(new UsernameNotFoundException("Not found"));
+
+		assertThrows(UsernameNotFoundException.class,
+				() -> authenticationService.refresh(tokenService.createRefreshToken("ann", USER)));
+	}
+}
@@ -0,0 +1,90 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.model.auth.Role;
+import com.kmarzecki.communicator.util.DateTimeProvider;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JwtTokenServiceTest {
+	private static final String ENCODED_SECRET_KEY = Base64.getEncoder().encodeToString("NON_SAFE_SECRET".getBytes());
+	private static final GrantedAuthority USER = new SimpleGrantedAuthority("ROLE_USER");
+
+	private final AtomicLong now = new AtomicLong(System.currentTimeMillis() / 1000 * 1000);
+	private final DateTimeProvider dateProvider = mock(DateTimeProvider.class);
+	private final JwtProperties properties = new JwtProperties();
+	private final VerifiedTokenCacheImpl tokenCache = new VerifiedTokenCacheImpl(dateProvider, properties);
+	private final JwtTokenService tokenService = new JwtTokenService(dateProvider, tokenCache, properties);
+
+	JwtTokenServiceTest() {
+		when(dateProvider.currentDate()).thenAnswer(invocation -> new Date(now.get()));
+	}
+
+	@Test
+	void tokenRevokedWhileCachedIsNotReturnedFromCache() {
+		String token = tokenService.createToken("ann", Collections.singletonList(USER));
+		Date issuedAt = new Date(now.get());
+		Authentication authentication = tokenService.getAuthentication(token);
+
+		now.addAndGet(2000);
+		tokenCache.revoke("ann");
+		tokenCache.put(token, authentication, issuedAt, new Date(now.get() + 60_000));
+
+		assertNull(tokenCache.get(token));
+		assertThrows(JwtException.class, () -> tokenService.getAuthentication(token));
+	}
+
+	@Test
+	void tokenWithRoleObjectsIsAccepted() {
+		Role role = new Role();
+		role.setId("1");
+		role.setName("ROLE_USER");
+		Claims claims = Jwts.claims().setSubject("ann");
+		claims.put("BASIC_ROLE", new HashSet<>(Collections.singletonList(role)));
+
+		Authentication authentication = tokenService.getAuthentication(token(claims));
+
+		assertEquals("ann", authentication.getName());
+		assertEquals(Collections.singletonList(USER), authentication.getAuthorities());
+	}
+
+	@Test
+	void tokenWithMalformedRolesIsRejected() {
+		Claims numbers = Jwts.claims().setSubject("ann");
+		numbers.put("BASIC_ROLE", Arrays.asList(1, 2));
+		Claims text = Jwts.claims().setSubject("ann");
+		text.put("BASIC_ROLE", "ROLE_USER");
+		Claims missing = Jwts.claims().setSubject("ann");
+
+		assertThrows(JwtException.class, () -> tokenService.getAuthentication(token(numbers)));
+		assertThrows(JwtException.class, () -> tokenService.getAuthentication(token(text)));
+		assertThrows(JwtException.class, () -> tokenService.getAuthentication(token(missing)));
+	}
+
+	private String token(Claims claims) {
+		return Jwts.builder()
+				.setClaims(claims)
+				.setIssuedAt(new Date(now.get()))
+				.setExpiration(new Date(now.get() + 60_000))
+				.signWith(SignatureAlgorithm.HS256, ENCODED_SECRET_KEY)
+				.compact();
+	}
+}
@@ -0,0 +1,54 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.model.auth.UserEntity;
+import com.kmarzecki.communicator.repository.RoleRepository;
+import com.kmarzecki.communicator.repository.UserRepository;
+import com.kmarzecki.communicator.util.DateTimeProvider;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserDetailsServiceImplTest {
+	private static final List<GrantedAuthority> USER = Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+
+	private final AtomicLong now = new AtomicLong(System.currentTimeMillis() / 1000 * 1000);
+	private final DateTimeProvider dateProvider = mock(DateTimeProvider.class);
+	private final JwtProperties properties = new JwtProperties();
+	private final JwtTokenService tokenService = new JwtTokenService(
+			dateProvider, new VerifiedTokenCacheImpl(dateProvider, properties), properties);
+	private final UserRepository userRepository = mock(UserRepository.class);
+	private final UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl(
+			userRepository, mock(RoleRepository.class), mock(UserIdCache.class), mock(PasswordEncoder.class), tokenService);
+
+	UserDetailsServiceImplTest() {
+		when(dateProvider.currentDate()).thenAnswer(invocation -> new Date(now.get()));
+	}
+
+	@Test
+	void passwordUpdateRevokesCachedTokens() {
+		UserEntity entity = UserEntity.builder().username("ann").password("old").roles(Collections.emptySet()).build();
+		when(userRepository.findByUsername("ann")).thenReturn(entity);
+		String token = tokenService.createToken("ann", USER);
+		assertEquals("ann", tokenService.getAuthentication(token).getName());
+
+		now.addAndGet(2000);
+		userDetailsService.updatePassword(new User("ann", "old", USER), "new");
+
+		assertThrows(JwtException.class, () -> tokenService.getAuthentication(token));
+		String reissued = tokenService.createToken("ann", USER);
+		assertEquals("ann", tokenService.getAuthentication(reissued).getName());
+	}
+}
@@ -0,0 +1,75 @@
+package com.kmarzecki.communicator.security;
+
+import com.kmarzecki.communicator.exception.OperationNotPermittedException;
+import com.kmarzecki.communicator.service.ChannelMembership;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.security.Principal;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WebSocketAuthenticationConfigTest {
+	private final ChannelMembership channelMembership = mock(ChannelMembership.class);
+	private ChannelInterceptor interceptor;
+
+	@BeforeEach
+	void setUp() {
+		WebSocketAuthenticationConfig config = new WebSocketAuthenticationConfig(
+				mock(JwtTokenService.class), channelMembership, mock(ConnectionAdmission.class));
+		InterceptorRegistration registration = new InterceptorRegistration();
+		config.configureClientInboundChannel(registration);
+		interceptor = registration.getInterceptors().get(0);
+		when(channelMembership.isMember(5, "ann")).thenReturn(true);
+	}
+
+	@Test
+	void membersSubscribeToChannelTopics() {
+		assertDoesNotThrow(() -> subscribe("/topic/channel/5", "ann"));
+		assertDoesNotThrow(() -> subscribe("/topic/channel/5/typing", "ann"));
+		assertDoesNotThrow(() -> subscribe("/user/topic/messages", "bob"));
+	}
+
+	@Test
+	void nonMembersAreRejected() {
+		assertThrows(OperationNotPermittedException.class, () -> subscribe("/topic/channel/5", "bob"));
+		assertThrows(OperationNotPermittedException.class, () -> subscribe("/topic/channel/5/typing", "bob"));
+	}
+
+	@Test
+	void patternsAndMalformedChannelDestinationsAreRejected() {
+		for (String destination : new String[]{
+				"/topic/channel/*", "/topic/channel/**", "/topic/**", "/topic/channel//5", "/topic//channel/5",
+				"/topic/channel/?", "/topic/channel/{id}", "/topic/channel/5/other", "/topic/channel/x"}) {
+			assertThrows(OperationNotPermittedException.class, () -> subscribe(destination, "ann"), destination);
+		}
+	}
+
+	private void subscribe(String destination, String username) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		accessor.setDestination(destination);
+		accessor.setUser((Principal) () -> username);
+		accessor.setLeaveMutable(true);
+		Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+		interceptor.preSend(message, null);
+	}
+
+	/**
+	 * Channel registration exposing the registered interceptors
+	 */
+	private static class InterceptorRegistration extends ChannelRegistration {
+		@Override
+		protected java.util.List<ChannelInterceptor> getInterceptors() {
+			return super.getInterceptors();
+		}
+	}
+}
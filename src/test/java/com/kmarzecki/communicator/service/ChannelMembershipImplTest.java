@@ -0,0 +1,59 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.repository.ChannelRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChannelMembershipImplTest {
+	private final ChannelRepository channelRepository = mock(ChannelRepository.class);
+	private final ChannelMembershipImpl membership = new ChannelMembershipImpl(channelRepository);
+
+	@Test
+	void membersAreLoadedOnce() {
+		when(channelRepository.findUsernamesById(1)).thenReturn(new HashSet<>(Arrays.asList("ann", "bob")));
+
+		assertTrue(membership.isMember(1, "ann"));
+		assertFalse(membership.isMember(1, "cid"));
+
+		verify(channelRepository, times(1)).findUsernamesById(1);
+	}
+
+	@Test
+	void nonexistentChannelsAreNotIndexed() {
+		when(channelRepository.findUsernamesById(anyInt())).thenReturn(Collections.emptySet());
+
+		assertFalse(membership.isMember(42, "ann"));
+		assertFalse(membership.isMember(42, "ann"));
+		assertTrue(membership.getMembers(Collections.singletonList(43)).get(43).isEmpty());
+
+		verify(channelRepository, times(2)).findUsernamesById(42);
+	}
+
+	@Test
+	void indexIsBoundedAndKeepsRecentlyUsedChannels() {
+		when(channelRepository.findUsernamesById(anyInt())).thenReturn(Collections.singleton("ann"));
+		membership.isMember(0, "ann");
+		for (int channelId = 1; channelId <= ChannelMembershipImpl.MAX_CHANNELS; channelId++) {
+			membership.isMember(channelId, "ann");
+			membership.isMember(0, "ann");
+		}
+
+		membership.isMember(1, "ann");
+		membership.isMember(ChannelMembershipImpl.MAX_CHANNELS, "ann");
+
+		verify(channelRepository, times(1)).findUsernamesById(0);
+		verify(channelRepository, times(2)).findUsernamesById(1);
+		verify(channelRepository, times(1)).findUsernamesById(ChannelMembershipImpl.MAX_CHANNELS);
+	}
+}
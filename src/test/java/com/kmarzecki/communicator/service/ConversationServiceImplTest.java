@@ -0,0 +1,189 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.api.conversation.MessageRequest;
+import com.kmarzecki.communicator.exception.OperationNotPermittedException;
+import com.kmarzecki.communicator.model.conversation.ChannelListResponse;
+import com.kmarzecki.communicator.model.conversation.MessageAckResponse;
+import com.kmarzecki.communicator.model.conversation.ChannelSummary;
+import com.kmarzecki.communicator.model.conversation.MessageEntity;
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import com.kmarzecki.communicator.model.conversation.SyncResponse;
+import com.kmarzecki.communicator.model.conversation.UnreadResponse;
+import com.kmarzecki.communicator.repository.ChannelRepository;
+import com.kmarzecki.communicator.repository.MessageStore;
+import com.kmarzecki.communicator.repository.UserRepository;
+import com.kmarzecki.communicator.security.UserIdCache;
+import com.kmarzecki.communicator.util.DateTimeProvider;
+import com.kmarzecki.communicator.util.MessageSender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.kmarzecki.communicator.util.MessageUtils.CHANNEL_LIST_TOPIC;
+import static com.kmarzecki.communicator.util.MessageUtils.MESSAGE_ACK_TOPIC;
+import static com.kmarzecki.communicator.util.MessageUtils.SYNC_TOPIC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationServiceImplTest {
+	private final ChannelRepository channelRepository = mock(ChannelRepository.class);
+	private final MessageSender messageSender = mock(MessageSender.class);
+	private final MessageStore messageStore = mock(MessageStore.class);
+	private final RecentMessageCache recentMessages = mock(RecentMessageCache.class);
+	private final ChannelMembership channelMembership = mock(ChannelMembership.class);
+	private final ReadState readState = mock(ReadState.class);
+	private ConversationServiceImpl service;
+
+	@BeforeEach
+	void setUp() {
+		service = new ConversationServiceImpl(
+				channelRepository,
+				mock(UserRepository.class),
+				messageSender,
+				messageStore,
+				mock(DateTimeProvider.class),
+				recentMessages,
+				channelMembership,
+				mock(UserIdCache.class),
+				readState,
+				mock(PresenceRegistry.class),
+				mock(OfflineInbox.class),
+				mock(TypingIndicators.class),
+				new MessageAcksImpl(new MessageCacheProperties()));
+		when(recentMessages.getAfter(any(), any())).thenReturn(Optional.empty());
+		when(recentMessages.getLatest(any(), anyInt())).thenReturn(Optional.empty());
+	}
+
+	@Test
+	void syncSendsLatestPageOfChannelsMissingFromTheClientState() {
+		when(channelRepository.findSummariesByUsername("ann")).thenReturn(Arrays.asList(summary(1), summary(2)));
+		when(messageStore.findAfter(eq(1), eq(5), anyInt())).thenReturn(Collections.singletonList(message(1, 6)));
+		when(messageStore.findLatest(eq(2), anyInt())).thenReturn(Arrays.asList(message(2, 4), message(2, 3)));
+		Map<Integer, Integer> lastSeen = new HashMap<>();
+		lastSeen.put(1, 5);
+		lastSeen.put(3, 0);
+
+		service.sync("ann", lastSeen);
+
+		ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+		verify(messageSender).sendToUser(eq("ann"), eq(SYNC_TOPIC), response.capture());
+		SyncResponse sync = (SyncResponse) response.getValue();
+		List<Integer> ids = sync.getMessages().stream()
+				.map(MessageResponse::getId)
+				.collect(Collectors.toList());
+		assertEquals(Arrays.asList(6, 3, 4), ids);
+		assertEquals(Collections.singletonList(2), sync.getResetChannels());
+		verify(messageStore, never()).findAfter(eq(2), any(), anyInt());
+		verify(messageStore, never()).findAfter(eq(3), any(), anyInt());
+	}
+
+	@Test
+	void resentMessageIsAcknowledgedAgainWithoutBeingStoredTwice() {
+		when(channelMembership.isMember(1, "ann")).thenReturn(true);
+		when(messageStore.append(any())).thenReturn(message(1, 6));
+
+		service.message("ann", request(1, "a-1"));
+		service.message("ann", request(1, "a-1"));
+
+		verify(messageStore, times(1)).append(any());
+		ArgumentCaptor<Object> acks = ArgumentCaptor.forClass(Object.class);
+		verify(messageSender, times(2)).sendToUser(eq("ann"), eq(MESSAGE_ACK_TOPIC), acks.capture());
+		assertEquals(acks.getAllValues().get(0), acks.getAllValues().get(1));
+		assertEquals(6, ((MessageAckResponse) acks.getValue()).getId());
+	}
+
+	@Test
+	void messageToForeignChannelIsRejectedToItsSender() {
+		assertThrows(OperationNotPermittedException.class, () -> service.message("ann", request(2, "a-1")));
+
+		ArgumentCaptor<Object> ack = ArgumentCaptor.forClass(Object.class);
+		verify(messageSender).sendToUser(eq("ann"), eq(MESSAGE_ACK_TOPIC), ack.capture());
+		assertEquals("a-1", ((MessageAckResponse) ack.getValue()).getCorrelationId());
+		assertEquals("Not a member of the channel", ((MessageAckResponse) ack.getValue()).getError());
+		verify(messageStore, never()).append(any());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void channelListLoadsLastMessagesOfUncachedChannelsAtOnce() {
+		when(channelRepository.findSummariesByUsername("ann")).thenReturn(Arrays.asList(summary(1), summary(2), summary(3)));
+		Map<Integer, UnreadResponse> unread = new HashMap<>();
+		for (int channelId = 1; channelId <= 3; channelId++) {
+			unread.put(channelId, UnreadResponse.builder().channelId(channelId).lastReadMessageId(0).unreadCount(0).build());
+		}
+		when(readState.getReadState(eq("ann"), any())).thenReturn(unread);
+		MessageResponse cached = MessageResponse.builder().id(7).channelId(1).username("bob").payload("cached").time(0L).build();
+		when(recentMessages.getLatest(1, 1)).thenReturn(Optional.of(Collections.singletonList(cached)));
+		when(messageStore.findLastMessages(Arrays.asList(2, 3))).thenReturn(Collections.singletonMap(2, message(2, 4)));
+		Map<Integer, Set<String>> members = new HashMap<>();
+		for (int channelId = 1; channelId <= 3; channelId++) {
+			members.put(channelId, Collections.singleton("ann"));
+		}
+		when(channelMembership.getMembers(Arrays.asList(1, 2, 3))).thenReturn(members);
+
+		service.getUserChannels(() -> "ann");
+
+		ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+		verify(messageSender).sendToUser(eq("ann"), eq(CHANNEL_LIST_TOPIC), response.capture());
+		List<ChannelListResponse> channels = (List<ChannelListResponse>) response.getValue();
+		assertEquals("cached", channels.get(0).getLastMessagePreview());
+		assertEquals("message 4", channels.get(1).getLastMessagePreview());
+		assertNull(channels.get(2).getLastMessagePreview());
+		verify(messageStore).findLastMessages(Arrays.asList(2, 3));
+		verify(messageStore, never()).findLatest(any(), anyInt());
+		verify(recentMessages).fill(3, Collections.emptyList(), true);
+	}
+
+	static ChannelSummary summary(int id) {
+		return new ChannelSummary() {
+			@Override
+			public Integer getId() {
+				return id;
+			}
+
+			@Override
+			public String getName() {
+				return "channel " + id;
+			}
+		};
+	}
+
+	static MessageRequest request(int channelId, String correlationId) {
+		MessageRequest request = new MessageRequest();
+		request.setChannelId(channelId);
+		request.setPayload("hello");
+		request.setCorrelationId(correlationId);
+		return request;
+	}
+
+	static MessageEntity message(int channelId, int id) {
+		return MessageEntity.builder()
+				.id(id)
+				.channelId(channelId)
+				.seq((long) id)
+				.userId(1)
+				.username("bob")
+				.payload("message " + id)
+				.time(LocalDateTime.of(2020, 1, 1, 0, 0))
+				.build();
+	}
+}
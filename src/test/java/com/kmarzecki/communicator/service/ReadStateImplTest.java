@@ -0,0 +1,148 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import com.kmarzecki.communicator.model.conversation.ReadMarkerEntity;
+import com.kmarzecki.communicator.model.conversation.ReadMarkerId;
+import com.kmarzecki.communicator.model.conversation.UnreadResponse;
+import com.kmarzecki.communicator.repository.MessageStore;
+import com.kmarzecki.communicator.repository.ReadMarkerRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReadStateImplTest {
+	private final ReadMarkerRepository readMarkerRepository = mock(ReadMarkerRepository.class);
+	private final MessageStore messageStore = mock(MessageStore.class);
+	private final RecentMessageCache recentMessages = mock(RecentMessageCache.class);
+	private final PresenceRegistry presenceRegistry = mock(PresenceRegistry.class);
+	private final ReadStateImpl readState =
+			new ReadStateImpl(properties(), readMarkerRepository, messageStore, recentMessages, presenceRegistry);
+
+	ReadStateImplTest() {
+		when(recentMessages.getAfter(anyInt(), anyInt())).thenReturn(Optional.empty());
+		when(readMarkerRepository.findById(any())).thenReturn(Optional.empty());
+		when(presenceRegistry.isOnline(anyString())).thenReturn(true);
+		readState.start();
+	}
+
+	@AfterEach
+	void stop() throws InterruptedException {
+		readState.stop();
+	}
+
+	@Test
+	void ownMessagesAreNotUnread() {
+		when(recentMessages.getAfter(1, 0)).thenReturn(Optional.of(Arrays.asList(
+				message(1, 1, "ann"), message(1, 2, "bob"), message(1, 3, "ann"))));
+		when(messageStore.countAfter(Collections.singletonMap(2, 0), "ann", 999)).thenReturn(Collections.singletonMap(2, 4));
+
+		assertEquals(1, unread("ann", 1));
+		assertEquals(4, unread("ann", 2));
+
+		readState.messageSent(message(1, 4, "ann"), Arrays.asList("ann", "bob"));
+		readState.messageSent(message(1, 5, "bob"), Arrays.asList("ann", "bob"));
+		assertEquals(2, unread("ann", 1));
+
+		when(recentMessages.getAfter(1, 3)).thenReturn(Optional.of(Arrays.asList(message(1, 4, "ann"), message(1, 5, "bob"))));
+		assertEquals(1, readState.markRead("ann", 1, 3).map(UnreadResponse::getUnreadCount).orElse(-1));
+	}
+
+	@Test
+	void uncachedChannelsAreCountedAtOnce() {
+		Map<Integer, Integer> lastRead = new HashMap<>();
+		lastRead.put(2, 0);
+		lastRead.put(3, 0);
+		Map<Integer, Integer> counts = new HashMap<>();
+		counts.put(2, 5);
+		when(recentMessages.getAfter(1, 0)).thenReturn(Optional.of(Collections.singletonList(message(1, 1, "bob"))));
+		when(messageStore.countAfter(lastRead, "ann", 999)).thenReturn(counts);
+
+		Map<Integer, UnreadResponse> state = readState.getReadState("ann", Arrays.asList(1, 2, 3));
+
+		assertEquals(1, state.get(1).getUnreadCount());
+		assertEquals(5, state.get(2).getUnreadCount());
+		assertEquals(0, state.get(3).getUnreadCount());
+		verify(messageStore, times(1)).countAfter(anyMap(), anyString(), anyInt());
+		verify(messageStore, times(0)).countAfter(anyInt(), anyInt(), anyString(), anyInt());
+	}
+
+	@Test
+	void countersOfOfflineUsersAreNotKept() {
+		when(presenceRegistry.isOnline("ann")).thenReturn(false);
+
+		unread("ann", 1);
+		unread("ann", 1);
+
+		verify(readMarkerRepository, times(2)).findAllByUsername("ann");
+	}
+
+	@Test
+	void countersAreDroppedAfterLastSessionCloses() throws InterruptedException {
+		unread("ann", 1);
+		unread("ann", 1);
+		verify(readMarkerRepository, times(1)).findAllByUsername("ann");
+
+		when(presenceRegistry.isOnline("ann")).thenReturn(false);
+		readState.onDisconnected(new SessionDisconnectEvent(this, MessageBuilder.withPayload(new byte[0]).build(),
+				"session", CloseStatus.NORMAL, () -> "ann"));
+		verify(presenceRegistry, timeout(1000).times(2)).isOnline("ann");
+		// wait for the eviction to complete
+		readState.stop();
+		when(presenceRegistry.isOnline("ann")).thenReturn(true);
+		unread("ann", 1);
+
+		verify(readMarkerRepository, times(2)).findAllByUsername("ann");
+	}
+
+	@Test
+	void pendingMarkersAreWrittenInOneBatchAndUsedUntilWritten() {
+		readState.markRead("ann", 1, 10);
+		readState.markRead("ann", 2, 20);
+		when(presenceRegistry.isOnline("ann")).thenReturn(false);
+
+		assertEquals(10, readState.getReadState("ann", Collections.singletonList(1)).get(1).getLastReadMessageId());
+		verify(readMarkerRepository, timeout(1000)).upsertAll(argThat((Collection<ReadMarkerEntity> markers) -> markers.size() == 2));
+		verify(readMarkerRepository, times(0)).save(any());
+	}
+
+	private int unread(String username, Integer channelId) {
+		return readState.getReadState(username, Collections.singletonList(channelId)).get(channelId).getUnreadCount();
+	}
+
+	private static MessageResponse message(Integer channelId, Integer id, String username) {
+		return MessageResponse.builder()
+				.id(id)
+				.channelId(channelId)
+				.username(username)
+				.payload("message " + id)
+				.build();
+	}
+
+	private static ReadMarkerProperties properties() {
+		ReadMarkerProperties properties = new ReadMarkerProperties();
+		properties.setFlushInterval(Duration.ofMillis(20));
+		return properties;
+	}
+}
@@ -0,0 +1,168 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.MessageResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentMessageCacheImplTest {
+	private static final int THREADS = 8;
+
+	@Test
+	void outOfOrderAddsAreKeptInIdOrder() {
+		RecentMessageCacheImpl cache = cache(10, 100, Long.MAX_VALUE);
+		cache.fill(1, new ArrayList<>(), true);
+
+		cache.add(message(1, 2));
+		cache.add(message(1, 1));
+		cache.add(message(1, 4));
+		cache.add(message(1, 3));
+
+		assertEquals(Arrays.asList(1, 2, 3, 4), ids(cache.getAfter(1, 0).get()));
+		assertEquals(Arrays.asList(3, 4), ids(cache.getAfter(1, 2).get()));
+		assertEquals(Arrays.asList(4, 3), ids(cache.getLatest(1, 2).get()));
+	}
+
+	@Test
+	void fullBufferDropsOldestAndRejectsOlderMessages() {
+		RecentMessageCacheImpl cache = cache(3, 100, Long.MAX_VALUE);
+		for (int id : new int[]{10, 12, 13, 11, 5}) {
+			cache.add(message(1, id));
+		}
+
+		assertEquals(Arrays.asList(13, 12, 11), ids(cache.getLatest(1, 3).get()));
+		assertEquals(Arrays.asList(12, 13), ids(cache.getAfter(1, 11).get()));
+		assertFalse(cache.getAfter(1, 4).isPresent());
+	}
+
+	@Test
+	void concurrentSendersNeverHideMessagesFromReaders() throws Exception {
+		RecentMessageCacheImpl cache = cache(10_000, 100, Long.MAX_VALUE);
+		cache.fill(1, new ArrayList<>(), true);
+		AtomicInteger ids = new AtomicInteger();
+		AtomicBoolean sending = new AtomicBoolean(true);
+		int perThread = 1_000;
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> senders = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			senders.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < perThread; i++) {
+					int id = ids.incrementAndGet();
+					if (ThreadLocalRandom.current().nextInt(4) == 0) {
+						Thread.yield();
+					}
+					cache.add(message(1, id));
+				}
+				return null;
+			}));
+		}
+		Future<?> reader = executor.submit(() -> {
+			start.await();
+			while (sending.get()) {
+				List<Integer> read = ids(cache.getAfter(1, 0).get());
+				for (int i = 1; i < read.size(); i++) {
+					assertTrue(read.get(i - 1) < read.get(i), "ids out of order");
+				}
+			}
+			return null;
+		});
+		start.countDown();
+		for (Future<?> sender : senders) {
+			sender.get(30, TimeUnit.SECONDS);
+		}
+		sending.set(false);
+		reader.get(30, TimeUnit.SECONDS);
+		executor.shutdown();
+
+		List<Integer> all = ids(cache.getAfter(1, 0).get());
+		assertEquals(THREADS * perThread, all.size());
+		for (int i = 0; i < all.size(); i++) {
+			assertEquals(i + 1, (int) all.get(i));
+		}
+	}
+
+	@Test
+	void concurrentChannelsStayWithinLimits() throws Exception {
+		RecentMessageCacheImpl cache = cache(20, 50, Long.MAX_VALUE);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		AtomicInteger ids = new AtomicInteger();
+		List<Future<?>> workers = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			workers.add(executor.submit(() -> {
+				for (int i = 0; i < 5_000; i++) {
+					int channel = ThreadLocalRandom.current().nextInt(200);
+					cache.add(message(channel, ids.incrementAndGet()));
+					cache.getLatest(channel, 5);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> worker : workers) {
+			worker.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		int cached = 0;
+		for (int channel = 0; channel < 200; channel++) {
+			if (cache.getLatest(channel, 1).isPresent()) {
+				cached++;
+			}
+		}
+		assertTrue(cached <= 50, "cached channels " + cached);
+	}
+
+	@Test
+	void leastRecentlyUsedChannelsAreEvicted() {
+		RecentMessageCacheImpl cache = cache(10, 10, Long.MAX_VALUE);
+		for (int channel = 0; channel < 10; channel++) {
+			cache.add(message(channel, channel + 1));
+		}
+		cache.getLatest(0, 1);
+
+		cache.add(message(10, 11));
+
+		assertTrue(cache.getLatest(0, 1).isPresent());
+		assertTrue(cache.getLatest(10, 1).isPresent());
+		assertFalse(cache.getLatest(1, 1).isPresent());
+	}
+
+	private static RecentMessageCacheImpl cache(int messagesPerChannel, int maxChannels, long maxBytes) {
+		MessageCacheProperties properties = new MessageCacheProperties();
+		properties.setMessagesPerChannel(messagesPerChannel);
+		properties.setMaxChannels(maxChannels);
+		properties.setMaxBytes(maxBytes);
+		return new RecentMessageCacheImpl(properties);
+	}
+
+	private static MessageResponse message(int channelId, int id) {
+		return MessageResponse.builder()
+				.id(id)
+				.channelId(channelId)
+				.seq((long) id)
+				.payload("message " + id)
+				.username("ann")
+				.time(0L)
+				.build();
+	}
+
+	private static List<Integer> ids(List<MessageResponse> messages) {
+		return messages.stream().map(MessageResponse::getId).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,57 @@
+package com.kmarzecki.communicator.service;
+
+import com.kmarzecki.communicator.model.conversation.TypingResponse;
+import com.kmarzecki.communicator.util.MessageSender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static com.kmarzecki.communicator.util.MessageUtils.typingTopic;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class TypingIndicatorsImplTest {
+	private final MessageSender messageSender = mock(MessageSender.class);
+	private final TypingIndicatorsImpl typingIndicators = new TypingIndicatorsImpl(messageSender, properties());
+
+	@AfterEach
+	void shutdown() {
+		typingIndicators.shutdown();
+	}
+
+	@Test
+	void channelIsForgottenAfterItsEmptySnapshot() throws InterruptedException {
+		typingIndicators.typing("ann", 1);
+		verify(messageSender, timeout(1000)).sendDroppable(typingTopic(1), new TypingResponse(1, Collections.singletonList("ann")));
+		verify(messageSender, timeout(1000)).sendDroppable(typingTopic(1), new TypingResponse(1, Collections.emptyList()));
+		awaitChannelCount(0);
+
+		typingIndicators.typing("ann", 1);
+		verify(messageSender, timeout(1000).times(2)).sendDroppable(typingTopic(1), new TypingResponse(1, Collections.singletonList("ann")));
+		typingIndicators.stopped("ann", 1);
+		verify(messageSender, timeout(1000).times(2)).sendDroppable(typingTopic(1), new TypingResponse(1, Collections.emptyList()));
+		awaitChannelCount(0);
+		verify(messageSender, times(4)).sendDroppable(eq(typingTopic(1)), any());
+	}
+
+	private void awaitChannelCount(int expected) throws InterruptedException {
+		for (int i = 0; i < 100 && typingIndicators.channelCount() != expected; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, typingIndicators.channelCount());
+	}
+
+	private static TypingProperties properties() {
+		TypingProperties properties = new TypingProperties();
+		properties.setExpiry(Duration.ofMillis(50));
+		properties.setBroadcastInterval(Duration.ofMillis(10));
+		return properties;
+	}
+}
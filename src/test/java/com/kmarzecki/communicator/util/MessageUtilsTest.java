@@ -0,0 +1,43 @@
+package com.kmarzecki.communicator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageUtilsTest {
+
+	@Test
+	void channelIdOfAcceptsChannelAndTypingTopics() {
+		assertEquals(Optional.of(5), MessageUtils.channelIdOf("/topic/channel/5"));
+		assertEquals(Optional.of(5), MessageUtils.channelIdOf("/topic/channel/5/typing"));
+		assertEquals(Optional.of(7), MessageUtils.channelIdOf(MessageUtils.typingTopic(7)));
+	}
+
+	@Test
+	void channelIdOfRejectsAnythingElse() {
+		assertFalse(MessageUtils.channelIdOf(null).isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/friends").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel/").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel/*").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel/**").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel//5").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel/5/").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel/5/other").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel/-5").isPresent());
+		assertFalse(MessageUtils.channelIdOf("/topic/channel/99999999999").isPresent());
+	}
+
+	@Test
+	void patternDestinations() {
+		assertTrue(MessageUtils.isPatternDestination("/topic/**"));
+		assertTrue(MessageUtils.isPatternDestination("/topic/channel/?"));
+		assertTrue(MessageUtils.isPatternDestination("/topic/channel/{id}"));
+		assertTrue(MessageUtils.isPatternDestination("/topic//channel/5"));
+		assertFalse(MessageUtils.isPatternDestination("/topic/channel/5"));
+		assertFalse(MessageUtils.isPatternDestination("/user/topic/messages"));
+	}
+}